@@ -17,12 +17,14 @@ public class IconFlyoutMenu {
         float inset;
         Path clipPath;
         RectF previousBounds;
+        RectF insetBounds;
         float alpha;
 
         IconDrawer(Drawable icon, float inset) {
             this.icon = icon;
             this.inset = inset;
             this.previousBounds = new RectF();
+            this.insetBounds = new RectF();
             setAlpha(1);
         }
 
@@ -51,13 +53,18 @@ public class IconFlyoutMenu {
         }
 
         void draw(Canvas canvas, RectF bounds) {
-            bounds = new RectF(bounds);
-            bounds.inset(inset, inset);
+            insetBounds.set(bounds);
+            insetBounds.inset(inset, inset);
+            bounds = insetBounds;
             canvas.save();
 
             if (clipPath == null || !bounds.equals(previousBounds)) {
-                previousBounds = bounds;
-                clipPath = new Path();
+                previousBounds.set(bounds);
+                if (clipPath == null) {
+                    clipPath = new Path();
+                } else {
+                    clipPath.reset();
+                }
                 clipPath.addCircle(bounds.centerX(), bounds.centerY(), Math.min(bounds.width(), bounds.height()) / 2, Path.Direction.CW);
             }
 
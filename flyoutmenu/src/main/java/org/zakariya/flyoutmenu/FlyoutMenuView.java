@@ -1,6 +1,6 @@
 package org.zakariya.flyoutmenu;
 
-import android.animation.Animator;
+import android.animation.TimeInterpolator;
 import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.content.Context;
@@ -8,10 +8,11 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
+import android.graphics.NinePatch;
+import android.graphics.Outline;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.Point;
+import android.graphics.Picture;
 import android.graphics.PointF;
 import android.graphics.RadialGradient;
 import android.graphics.Rect;
@@ -20,22 +21,32 @@ import android.graphics.Shader;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import androidx.annotation.ColorInt;
 import androidx.annotation.Nullable;
 import androidx.core.graphics.ColorUtils;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.TypedValue;
-import android.view.Display;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.VelocityTracker;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
-import android.view.WindowManager;
+import android.view.ViewOutlineProvider;
+import android.view.ViewTreeObserver;
+import android.view.WindowInsets;
 import android.view.animation.AccelerateDecelerateInterpolator;
+import android.widget.OverScroller;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 //@SuppressWarnings("unused")
 public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdateListener {
@@ -115,6 +126,17 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		}
 
 		abstract public void onDrawButtonContent(Canvas canvas, RectF buttonBounds, @ColorInt int buttonColor, float alpha);
+
+		/**
+		 * The button is not redrawn while the selection animates, since by default its appearance
+		 * doesn't depend on it. Renderers which draw differently during the selection transition
+		 * (see FlyoutMenuView::getSelectionTransition) should return true.
+		 *
+		 * @return true if the button must be redrawn on each frame of the selection animation
+		 */
+		public boolean isSelectionDependent() {
+			return false;
+		}
 	}
 
 	/**
@@ -123,6 +145,8 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	public static class MenuItem {
 
 		int id;
+		Adapter submenuAdapter;
+		Layout submenuLayout;
 
 		public MenuItem(int id) {
 			this.id = id;
@@ -141,6 +165,74 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		 */
 		public void onDraw(Canvas canvas, RectF bounds, float degreeSelected) {
 		}
+
+		/**
+		 * Measure the MenuItem. This is only called when the menu's Layout is a VariableSizeLayout, such as FlowLayout.
+		 * The result is cached per adapter position, so if the item's size changes call BaseAdapter::notifyItemChanged
+		 * to have it measured again. By default, the FlyoutMenuView's item size is used.
+		 *
+		 * @param outSize      receives the width and height in pixels of the item
+		 * @param itemWidthPx  the FlyoutMenuView's item width
+		 * @param itemHeightPx the FlyoutMenuView's item height
+		 */
+		public void onMeasure(Size outSize, int itemWidthPx, int itemHeightPx) {
+			outSize.width = itemWidthPx;
+			outSize.height = itemHeightPx;
+		}
+
+		/**
+		 * Override to give this item a submenu, along with onCreateSubmenuAdapter. An item with a submenu opens it rather
+		 * than being selected, when a drag dwells on the item or the item is tapped or released on. The submenu opens in
+		 * the same overlay as the menu, beside it.
+		 *
+		 * @return true if this item has a submenu
+		 */
+		public boolean hasSubmenu() {
+			return false;
+		}
+
+		/**
+		 * Create the adapter vending this item's submenu items. This is called the first time the submenu opens, and the
+		 * adapter is retained. Submenu items are read from the adapter each time the submenu opens.
+		 *
+		 * @return the submenu's adapter
+		 */
+		@Nullable
+		protected Adapter onCreateSubmenuAdapter() {
+			return null;
+		}
+
+		/**
+		 * Create the layout of this item's submenu. This is called the first time the submenu opens, and the layout is
+		 * retained. By default, submenus are a single column.
+		 *
+		 * @return the submenu's layout
+		 */
+		protected Layout onCreateSubmenuLayout() {
+			return new GridLayout(1, GridLayout.UNSPECIFIED);
+		}
+
+		/**
+		 * @return the adapter of this item's submenu, created on first use, or null if it has no submenu
+		 */
+		@Nullable
+		public Adapter getSubmenuAdapter() {
+			if (submenuAdapter == null && hasSubmenu()) {
+				submenuAdapter = onCreateSubmenuAdapter();
+			}
+			return submenuAdapter;
+		}
+
+		/**
+		 * @return the layout of this item's submenu, created on first use, or null if it has no submenu
+		 */
+		@Nullable
+		public Layout getSubmenuLayout() {
+			if (submenuLayout == null && hasSubmenu()) {
+				submenuLayout = onCreateSubmenuLayout();
+			}
+			return submenuLayout;
+		}
 	}
 
 	/**
@@ -165,6 +257,44 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		Rect getLayoutRectForItem(int positionInList, int itemWidthPx, int itemHeightPx, int itemMarginPx);
 	}
 
+	/**
+	 * Optional extension to Layout for layouts which can position many items in one call, writing their
+	 * rects into a primitive array rather than returning a Rect per item. This keeps laying out large
+	 * menus free of per-item allocations.
+	 */
+	public interface BulkLayout extends Layout {
+		/**
+		 * Compute the layout rects of a range of items, as getLayoutRectForItem would
+		 *
+		 * @param itemCount     the number of items in the menu
+		 * @param positionStart the adapter position of the first item to lay out
+		 * @param positionEnd   the adapter position after the last item to lay out
+		 * @param itemWidthPx   width of the items
+		 * @param itemHeightPx  height of the items
+		 * @param itemMarginPx  the margin around the items
+		 * @param outFrames     receives the rect of the item at position p as left, top, right, bottom at outFrames[p * 4] to outFrames[p * 4 + 3]
+		 */
+		void layoutItems(int itemCount, int positionStart, int positionEnd, int itemWidthPx, int itemHeightPx, int itemMarginPx, float[] outFrames);
+	}
+
+	/**
+	 * Optional extension to Layout for layouts which can map a point in the menu back to the item under
+	 * it directly, making hit testing constant-time. Layouts which don't implement this are hit tested
+	 * via a spatial index built from their item rects each time the menu is laid out.
+	 */
+	public interface InvertibleLayout extends Layout {
+		/**
+		 * @param x            x coordinate in pixels, where the origin (0,0) is the top left of the flyout menu
+		 * @param y            y coordinate in pixels, where the origin (0,0) is the top left of the flyout menu
+		 * @param itemCount    the number of items in the menu
+		 * @param itemWidthPx  width of the items
+		 * @param itemHeightPx height of the items
+		 * @param itemMarginPx the margin around the items
+		 * @return the position in the adapter of the item whose layout rect contains x,y, or -1 if there is none
+		 */
+		int getItemPositionAt(float x, float y, int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx);
+	}
+
 	/**
 	 * Basic Layout implementation that places items in a grid.
 	 */
@@ -175,6 +305,9 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 		int cols, rows;
 
+		// lays out and hit tests a plain GridLayout, created when first needed
+		private GridLayoutGeometry geometry;
+
 		/**
 		 * Creates a GirdLayout with a specified number of columns or rows. You must specify one concrete value, and
 		 * one unspecified using GridLayout.UNSPECIFIED. E.g. calling GridLayout(4, GridLayout.UNSPECIFIED) would produce
@@ -213,18 +346,8 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 		@Override
 		public Rect getLayoutRectForItem(int positionInList, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
-			int row;
-			int col;
-
-			if (cols > 0) {
-				row = (int) Math.floor((float) positionInList / cols);
-				col = positionInList - row * cols;
-			} else if (rows > 0) {
-				col = (int) Math.floor((float) positionInList / rows);
-				row = positionInList - col * rows;
-			} else {
-				throw new IllegalArgumentException("one of cols or rows attribute must be 0, both cannot be set");
-			}
+			int row = getRow(positionInList);
+			int col = getColumn(positionInList);
 
 			Rect rect = new Rect();
 			rect.left = col * itemWidthPx + (col + 1) * itemMarginPx;
@@ -234,173 +357,961 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 			return rect;
 		}
+
+		int getRow(int positionInList) {
+			if (cols > 0) {
+				return positionInList / cols;
+			} else if (rows > 0) {
+				return positionInList % rows;
+			} else {
+				throw new IllegalArgumentException("one of cols or rows attribute must be 0, both cannot be set");
+			}
+		}
+
+		int getColumn(int positionInList) {
+			if (cols > 0) {
+				return positionInList % cols;
+			} else if (rows > 0) {
+				return positionInList / rows;
+			} else {
+				throw new IllegalArgumentException("one of cols or rows attribute must be 0, both cannot be set");
+			}
+		}
+
+		GridLayoutGeometry getGeometry() {
+			if (geometry == null) {
+				geometry = new GridLayoutGeometry(this);
+			}
+			return geometry;
+		}
 	}
 
 	/**
-	 * Base class for a FlyoutMenu's data source - the thing providing the MenuItems
+	 * Optional extension to Layout for layouts whose items each have their own size, as measured by
+	 * MenuItem::onMeasure. When the menu's Layout implements this, these methods are used in place of
+	 * getMinimumSizeForItems and getLayoutRectForItem.
 	 */
-	public interface Adapter {
+	public interface VariableSizeLayout extends Layout {
 		/**
-		 * @return the number of MenuItems in this Adapter
+		 * @param itemCount    the number of items in the menu
+		 * @param itemSizes    the measured size of the item at position p is itemSizes[p * 2] by itemSizes[p * 2 + 1]
+		 * @param itemMarginPx the margin around the items
+		 * @return the minimum size the FlyoutMenu must be to display all items
 		 */
-		int getCount();
+		Size getMinimumSizeForMeasuredItems(int itemCount, int[] itemSizes, int itemMarginPx);
 
 		/**
-		 * @param position the index of the item to vend
-		 * @return the MenuItem at position
+		 * @param itemCount    the number of items in the menu
+		 * @param itemSizes    the measured size of the item at position p is itemSizes[p * 2] by itemSizes[p * 2 + 1]
+		 * @param itemMarginPx the margin around the items
+		 * @param outFrames    receives the rect of the item at position p as left, top, right, bottom at outFrames[p * 4] to outFrames[p * 4 + 3]
 		 */
-		MenuItem getItem(int position);
+		void layoutMeasuredItems(int itemCount, int[] itemSizes, int itemMarginPx, float[] outFrames);
 	}
 
 	/**
-	 * Convenience Adapter implementation wrapping an Array.
-	 *
-	 * @param <T>
+	 * Layout which places items of varying sizes in rows, left to right, starting a new row when the next
+	 * item would make the row wider than a maximum width. Items are vertically centered in their row. Item
+	 * sizes come from MenuItem::onMeasure.
 	 */
 	@SuppressWarnings("unused")
-	public static class ArrayAdapter<T> implements Adapter {
+	public static class FlowLayout implements VariableSizeLayout {
 
-		private List<T> items;
+		int maxRowWidth;
 
-		public ArrayAdapter(List<T> items) {
-			this.items = items;
+		/**
+		 * @param maxRowWidthPx the maximum width in pixels of a row of items, including margins. A single item wider than this gets a row of its own
+		 */
+		public FlowLayout(int maxRowWidthPx) {
+			if (maxRowWidthPx <= 0) {
+				throw new IllegalArgumentException("maxRowWidthPx must be greater than 0");
+			}
+			this.maxRowWidth = maxRowWidthPx;
 		}
 
-		public ArrayAdapter(T[] items) {
-			this.items = Arrays.asList(items);
+		@Override
+		public Size getMinimumSizeForItems(int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			// without measurements every item has the same size, so rows are uniform
+			int itemsPerRow = getItemsPerRow(itemWidthPx, itemMarginPx);
+			int requiredCols = Math.min(itemCount, itemsPerRow);
+			int requiredRows = (int) Math.ceil((float) itemCount / (float) itemsPerRow);
+
+			Size size = new Size();
+			size.width = requiredCols * itemWidthPx + ((requiredCols + 1) * itemMarginPx);
+			size.height = requiredRows * itemHeightPx + ((requiredRows + 1) * itemMarginPx);
+			return size;
 		}
 
 		@Override
-		public int getCount() {
-			return items.size();
+		public Rect getLayoutRectForItem(int positionInList, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			int itemsPerRow = getItemsPerRow(itemWidthPx, itemMarginPx);
+			int row = positionInList / itemsPerRow;
+			int col = positionInList % itemsPerRow;
+
+			Rect rect = new Rect();
+			rect.left = col * itemWidthPx + (col + 1) * itemMarginPx;
+			rect.top = row * itemHeightPx + (row + 1) * itemMarginPx;
+			rect.right = rect.left + itemWidthPx;
+			rect.bottom = rect.top + itemHeightPx;
+			return rect;
 		}
 
 		@Override
-		public MenuItem getItem(int position) {
-			return (MenuItem) items.get(position);
+		public Size getMinimumSizeForMeasuredItems(int itemCount, int[] itemSizes, int itemMarginPx) {
+			Size size = new Size();
+			flow(itemCount, itemSizes, itemMarginPx, null, size);
+			return size;
 		}
-	}
-
 
-	private static class MenuItemLayout {
-		MenuItem item;
-		int itemAdapterPosition;
-		RectF frame;
-		RectF bounds;
-	}
+		@Override
+		public void layoutMeasuredItems(int itemCount, int[] itemSizes, int itemMarginPx, float[] outFrames) {
+			flow(itemCount, itemSizes, itemMarginPx, outFrames, null);
+		}
 
-	@SuppressWarnings("unused")
-	private static final String TAG = FlyoutMenuView.class.getSimpleName();
+		private int getItemsPerRow(int itemWidthPx, int itemMarginPx) {
+			return Math.max(1, (maxRowWidth - itemMarginPx) / (itemWidthPx + itemMarginPx));
+		}
 
-	private static final int ANIMATION_DURATION_MILLIS = 225; // 225 normal
+		/**
+		 * Place items in rows, writing their frames to outFrames and the total size to outSize. Either may be null.
+		 */
+		private void flow(int itemCount, int[] itemSizes, int itemMarginPx, @Nullable float[] outFrames, @Nullable Size outSize) {
+			int x = itemMarginPx;
+			int y = itemMarginPx;
+			int width = 0;
+			int rowStart = 0;
+			int rowHeight = 0;
+
+			for (int i = 0; i < itemCount; i++) {
+				int itemWidth = itemSizes[i * 2];
+				if (i > rowStart && x + itemWidth + itemMarginPx > maxRowWidth) {
+					finishRow(rowStart, i, y, rowHeight, itemSizes, outFrames);
+					x = itemMarginPx;
+					y += rowHeight + itemMarginPx;
+					rowStart = i;
+					rowHeight = 0;
+				}
 
-	private static final int DEFAULT_BUTTON_ELEVATION_DP = 4;
-	private static final int DEFAULT_MENU_ELEVATION_DP = 8;
+				if (outFrames != null) {
+					outFrames[i * 4] = x;
+					outFrames[i * 4 + 2] = x + itemWidth;
+				}
 
-	private static final int MENU_CORNER_RADIUS_DP = 4;
-	private static final int DEFAULT_ITEM_SIZE_DP = 48;
-	private static final int DEFAULT_ITEM_MARGIN_DP = 8;
+				x += itemWidth + itemMarginPx;
+				width = Math.max(width, x);
+				rowHeight = Math.max(rowHeight, itemSizes[i * 2 + 1]);
+			}
 
-	private static final int DEFAULT_BUTTON_SIZE_DP = 56;
+			finishRow(rowStart, itemCount, y, rowHeight, itemSizes, outFrames);
 
-	private static final float DEFAULT_HORIZONTAL_MENU_ANCHOR = 1f;
-	private static final boolean DEFAULT_HORIZONTAL_MENU_ANCHOR_OUTSIDE = false;
-	private static final float DEFAULT_VERTICAL_MENU_ANCHOR = 0.5f;
-	private static final boolean DEFAULT_VERTICAL_MENU_ANCHOR_OUTSIDE = false;
-	private static final float DEFAULT_MENU_MARGIN_DP = 16;
+			if (outSize != null) {
+				outSize.width = width;
+				outSize.height = y + rowHeight + itemMarginPx;
+			}
+		}
 
-	private static final int SHADOW_COLOR = 0xFF000000;
-	private static final int SHADOW_ALPHA = 32;
+		/**
+		 * Now that the height of a row is known, vertically center its items
+		 */
+		private static void finishRow(int rowStart, int rowEnd, int rowTop, int rowHeight, int[] itemSizes, @Nullable float[] outFrames) {
+			if (outFrames == null) {
+				return;
+			}
 
+			for (int i = rowStart; i < rowEnd; i++) {
+				int itemHeight = itemSizes[i * 2 + 1];
+				int top = rowTop + (rowHeight - itemHeight) / 2;
+				outFrames[i * 4 + 1] = top;
+				outFrames[i * 4 + 3] = top + itemHeight;
+			}
+		}
+	}
 
-	Paint paint;
+	/**
+	 * Layout which arranges items in concentric rings around the button, like a pie menu. The menu is
+	 * circular and centered on the button. The innermost ring holds 6 items, and each ring outwards holds
+	 * 6 more than the last, so menus of 6, 18, 36... items fill their rings evenly. Items are hit tested
+	 * by direction and distance from the button: a touch anywhere in an item's slice of its ring selects
+	 * it, even before the finger reaches the item itself. Past the outermost ring touches select by
+	 * direction alone, as do touches on the empty part of a partly filled outermost ring, which select
+	 * from the ring inside it. Only the hub around the button selects nothing.
+	 */
+	@SuppressWarnings("unused")
+	public static class RadialLayout implements BulkLayout, InvertibleLayout {
 
-	@ColorInt
-	int buttonBackgroundColor = 0xFFFFFFFF;
+		private static final int RING_CAPACITY_STEP = 6;
 
-	@ColorInt
-	int menuBackgroundColor = 0xFFFFFFFF;
+		double startAngle;
 
-	@ColorInt
-	int selectedItemBackgroundColor = 0x0; // defaults to transparent
+		// scratch frame for getLayoutRectForItem, layouts are only used on the UI thread
+		private final float[] frame = new float[4];
 
-	@ColorInt
-	int shieldColor = 0x77303030;
+		/**
+		 * Creates a RadialLayout whose first item in each ring is at 12 o'clock
+		 */
+		public RadialLayout() {
+			this(-90);
+		}
 
-	boolean shieldVisible;
+		/**
+		 * @param startAngle angle in degrees of the first item in each ring, clockwise from 3 o'clock
+		 */
+		public RadialLayout(float startAngle) {
+			this.startAngle = Math.toRadians(startAngle);
+		}
 
-	float buttonElevation;
-	float menuElevation;
+		@Override
+		public Size getMinimumSizeForItems(int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			int diameter = getDiameter(itemCount, itemWidthPx, itemHeightPx, itemMarginPx);
+			return new Size(diameter, diameter);
+		}
 
-	int buttonSize;
-	PointF buttonCenter;
-	RectF buttonFillOval = new RectF();
-	int buttonRadius;
+		/**
+		 * Items are positioned relative to the menu's center, which depends on the number of items in the menu.
+		 * Since this method isn't told the item count, the item is placed as in a menu whose outermost ring is
+		 * the item's own. Use getLayoutRectForItem(int, int, int, int, int, Rect) to lay out a menu of known size.
+		 */
+		@Override
+		public Rect getLayoutRectForItem(int positionInList, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			Rect rect = new Rect();
+			getLayoutRectForItem(positionInList, positionInList + 1, itemWidthPx, itemHeightPx, itemMarginPx, rect);
+			return rect;
+		}
 
-	Drawable buttonDrawable;
-	Bitmap buttonShadowBitmap;
+		/**
+		 * Lay out a single item of a menu of itemCount items, without allocating
+		 *
+		 * @param positionInList the position of the item
+		 * @param itemCount      the number of items in the menu
+		 * @param itemWidthPx    the width of a menu item
+		 * @param itemHeightPx   the height of a menu item
+		 * @param itemMarginPx   the margin around each item
+		 * @param outRect        receives the frame of the item, relative to the menu's top left
+		 */
+		public void getLayoutRectForItem(int positionInList, int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx, Rect outRect) {
+			if (positionInList < 0 || positionInList >= itemCount) {
+				throw new IllegalArgumentException("positionInList must be in [0, itemCount)");
+			}
 
-	float horizontalMenuAnchor = 0.5f;
-	float verticalMenuAnchor = 0.5f;
-	boolean horizontalMenuAnchorOutside = false;
-	boolean verticalMenuAnchorOutside = false;
-	float menuMargin = 0;
+			float center = getDiameter(itemCount, itemWidthPx, itemHeightPx, itemMarginPx) / 2f;
+			layoutItem(positionInList, center, getPitch(itemWidthPx, itemHeightPx, itemMarginPx), itemWidthPx, itemHeightPx, frame, 0);
+			outRect.set((int) frame[0], (int) frame[1], (int) frame[2], (int) frame[3]);
+		}
 
-	int itemWidth;
-	int itemHeight;
-	int itemMargin;
-	Adapter adapter;
-	Layout layout;
-	MenuItem selectedMenuItem;
-	MenuItem previouslySelectedMenuItem;
-	RectF selectedMenuItemBounds = new RectF();
+		@Override
+		public void layoutItems(int itemCount, int positionStart, int positionEnd, int itemWidthPx, int itemHeightPx, int itemMarginPx, float[] outFrames) {
+			float center = getDiameter(itemCount, itemWidthPx, itemHeightPx, itemMarginPx) / 2f;
+			float pitch = getPitch(itemWidthPx, itemHeightPx, itemMarginPx);
 
-	SelectionListener selectionListener;
-	ButtonRenderer buttonRenderer;
+			for (int position = positionStart; position < positionEnd; position++) {
+				layoutItem(position, center, pitch, itemWidthPx, itemHeightPx, outFrames, position * 4);
+			}
+		}
 
-	ValueAnimator menuAnimator;
-	ValueAnimator selectionAnimator;
-	float menuOpenTransition; // 0 is closed, 1 is menuOpen
-	float selectionTransition;
+		private void layoutItem(int position, float center, float pitch, int itemWidthPx, int itemHeightPx, float[] outFrames, int offset) {
+			int ring = getRing(position);
+			int slot = position - getRingStart(ring);
+			double angle = startAngle + slot * 2 * Math.PI / getRingCapacity(ring);
+			float radius = (ring + 1) * pitch;
+			float left = Math.round(center + radius * Math.cos(angle) - itemWidthPx / 2f);
+			float top = Math.round(center + radius * Math.sin(angle) - itemHeightPx / 2f);
+
+			outFrames[offset] = left;
+			outFrames[offset + 1] = top;
+			outFrames[offset + 2] = left + itemWidthPx;
+			outFrames[offset + 3] = top + itemHeightPx;
+		}
 
-	boolean menuOverlayViewAttached;
-	MenuOverlayView menuOverlayView;
+		@Override
+		public int getItemPositionAt(float x, float y, int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			if (itemCount <= 0) {
+				return -1;
+			}
 
-	boolean dialogMode = false;
-	boolean wasOpenedAsDialog = false;
+			float center = getDiameter(itemCount, itemWidthPx, itemHeightPx, itemMarginPx) / 2f;
+			float pitch = getPitch(itemWidthPx, itemHeightPx, itemMarginPx);
+			float dx = x - center;
+			float dy = y - center;
 
-	public FlyoutMenuView(Context context) {
-		super(context);
-		init(null, 0);
-	}
+			// each ring owns the band within half a pitch of its radius, anything nearer the center is the hub,
+			// and the outermost ring owns everything beyond it
+			int ring = Math.round((float) Math.sqrt(dx * dx + dy * dy) / pitch) - 1;
+			if (ring < 0) {
+				return -1;
+			}
+			ring = Math.min(ring, getRing(itemCount - 1));
 
-	public FlyoutMenuView(Context context, AttributeSet attrs) {
-		super(context, attrs);
-		init(attrs, 0);
-	}
+			double angle = Math.atan2(dy, dx) - startAngle;
+			int position = getPositionAtAngle(ring, angle);
+			if (position >= itemCount && ring > 0) {
+				// the slice is empty in a partly filled outermost ring, but the ring inside it is full
+				position = getPositionAtAngle(ring - 1, angle);
+			}
 
-	public FlyoutMenuView(Context context, AttributeSet attrs, int defStyle) {
-		super(context, attrs, defStyle);
-		init(attrs, defStyle);
-	}
+			return position < itemCount ? position : -1;
+		}
 
-	private void init(AttributeSet attrs, int defStyle) {
+		/**
+		 * @return the position of the item in a ring whose slice contains an angle, each item owning the slice of its ring centered on its angle
+		 */
+		private static int getPositionAtAngle(int ring, double angle) {
+			int capacity = getRingCapacity(ring);
+			int slot = (int) Math.round(angle * capacity / (2 * Math.PI)) % capacity;
+			if (slot < 0) {
+				slot += capacity;
+			}
+			return getRingStart(ring) + slot;
+		}
 
-		// workaround for lack of clip path in API < 18
-		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
-			setLayerType(LAYER_TYPE_SOFTWARE, null);
+		/**
+		 * Items are spaced by their diagonal plus margin, both around and between rings, so that neighbors
+		 * don't overlap whatever their angle
+		 */
+		private static float getPitch(int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			return (float) Math.sqrt(itemWidthPx * itemWidthPx + itemHeightPx * itemHeightPx) + itemMarginPx;
 		}
 
-		paint = new Paint();
-		paint.setAntiAlias(true);
+		private static int getDiameter(int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			if (itemCount <= 0) {
+				return 0;
+			}
 
-		// TODO see how to get 'windowBackground' from android.R.style.ThemeOverlay_Material_Dialog
-		// https://android.googlesource.com/platform/frameworks/base/+/refs/heads/master/core/res/res/values/themes_material.xml
-		// ThemeOverlay.Material.Dialog -> windowBackground -> @drawable/dialog_background_material
-		// https://android.googlesource.com/platform/frameworks/base/+/refs/heads/master/core/res/res/drawable/dialog_background_material.xml
-		// ?attr/colorBackground
-		// https://android.googlesource.com/platform/frameworks/base/+/refs/heads/master/core/res/res/values/themes_material.xml#47
-		// But where's the ALPHA coming from? colorBackground is opaque...
+			// the outermost ring's items extend from the ring by half their diagonal, plus a margin
+			float outerRadius = (getRing(itemCount - 1) + 1) * getPitch(itemWidthPx, itemHeightPx, itemMarginPx);
+			float halfDiagonal = (float) Math.sqrt(itemWidthPx * itemWidthPx + itemHeightPx * itemHeightPx) / 2f;
+			return (int) Math.ceil(2 * (outerRadius + halfDiagonal + itemMarginPx));
+		}
+
+		private static int getRingCapacity(int ring) {
+			return RING_CAPACITY_STEP * (ring + 1);
+		}
+
+		/**
+		 * @return the position of the first item in a ring; rings hold 6, 12, 18... items so this is 3 * ring * (ring + 1)
+		 */
+		private static int getRingStart(int ring) {
+			return RING_CAPACITY_STEP * ring * (ring + 1) / 2;
+		}
+
+		private static int getRing(int position) {
+			// invert getRingStart, then correct for floating point error
+			int ring = (int) ((Math.sqrt(1 + 8.0 * position / RING_CAPACITY_STEP) - 1) / 2);
+			while (ring > 0 && getRingStart(ring) > position) {
+				ring--;
+			}
+			while (getRingStart(ring + 1) <= position) {
+				ring++;
+			}
+			return ring;
+		}
+	}
+
+	/**
+	 * Base class for a FlyoutMenu's data source - the thing providing the MenuItems
+	 */
+	public interface Adapter {
+		/**
+		 * @return the number of MenuItems in this Adapter
+		 */
+		int getCount();
+
+		/**
+		 * @param position the index of the item to vend
+		 * @return the MenuItem at position
+		 */
+		MenuItem getItem(int position);
+	}
+
+	/**
+	 * Receives notifications of changes to the contents of a BaseAdapter
+	 */
+	public interface AdapterObserver {
+		/**
+		 * The adapter's contents changed in some unspecified way, everything must be reloaded
+		 */
+		void onChanged();
+
+		/**
+		 * @param positionStart the adapter position of the first item which changed
+		 * @param itemCount     the number of items which changed
+		 */
+		void onItemRangeChanged(int positionStart, int itemCount);
+
+		/**
+		 * @param positionStart the adapter position of the first inserted item
+		 * @param itemCount     the number of items inserted
+		 */
+		void onItemRangeInserted(int positionStart, int itemCount);
+
+		/**
+		 * @param positionStart the adapter position the first removed item occupied
+		 * @param itemCount     the number of items removed
+		 */
+		void onItemRangeRemoved(int positionStart, int itemCount);
+	}
+
+	/**
+	 * Base class for Adapters which notify the FlyoutMenuView when their contents change. Calling the
+	 * notifyItem* methods instead of assigning a new adapter lets the FlyoutMenuView update only the
+	 * affected items rather than rebuilding its entire menu.
+	 */
+	@SuppressWarnings("unused")
+	public static abstract class BaseAdapter implements Adapter {
+
+		private final ArrayList<AdapterObserver> observers = new ArrayList<>();
+		private boolean hasStableIds;
+
+		// counts notifications, so a FlyoutMenuView can tell whether it missed any while detached
+		int changeCount;
+
+		/**
+		 * @return true if each item's id is unique and stays with that item as the adapter changes
+		 */
+		public boolean hasStableIds() {
+			return hasStableIds;
+		}
+
+		/**
+		 * Declare that each item's id is unique and stays with that item as the adapter changes. This
+		 * lets FlyoutMenuView look items up by id in constant time via an index it maintains.
+		 *
+		 * @param hasStableIds whether this adapter's ids are stable
+		 */
+		public void setHasStableIds(boolean hasStableIds) {
+			this.hasStableIds = hasStableIds;
+		}
+
+		/**
+		 * @param position the adapter position of an item
+		 * @return the id of the item at that position. Override if ids can be had without vending the item
+		 */
+		public int getItemId(int position) {
+			return getItem(position).getId();
+		}
+
+		public void registerObserver(AdapterObserver observer) {
+			if (!observers.contains(observer)) {
+				observers.add(observer);
+			}
+		}
+
+		public void unregisterObserver(AdapterObserver observer) {
+			observers.remove(observer);
+		}
+
+		/**
+		 * Notify that the adapter's contents changed in some unspecified way. Prefer the more specific notifyItem* methods.
+		 */
+		public void notifyDataSetChanged() {
+			changeCount++;
+			for (int i = observers.size() - 1; i >= 0; i--) {
+				observers.get(i).onChanged();
+			}
+		}
+
+		/**
+		 * Notify that the item at a given position changed its appearance, or was replaced
+		 *
+		 * @param position the adapter position of the item which changed
+		 */
+		public void notifyItemChanged(int position) {
+			notifyItemRangeChanged(position, 1);
+		}
+
+		public void notifyItemRangeChanged(int positionStart, int itemCount) {
+			changeCount++;
+			for (int i = observers.size() - 1; i >= 0; i--) {
+				observers.get(i).onItemRangeChanged(positionStart, itemCount);
+			}
+		}
+
+		/**
+		 * Notify that an item was inserted at a given position, shifting those after it
+		 *
+		 * @param position the adapter position of the new item
+		 */
+		public void notifyItemInserted(int position) {
+			notifyItemRangeInserted(position, 1);
+		}
+
+		public void notifyItemRangeInserted(int positionStart, int itemCount) {
+			changeCount++;
+			for (int i = observers.size() - 1; i >= 0; i--) {
+				observers.get(i).onItemRangeInserted(positionStart, itemCount);
+			}
+		}
+
+		/**
+		 * Notify that the item at a given position was removed, shifting those after it
+		 *
+		 * @param position the adapter position the removed item occupied
+		 */
+		public void notifyItemRemoved(int position) {
+			notifyItemRangeRemoved(position, 1);
+		}
+
+		public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+			changeCount++;
+			for (int i = observers.size() - 1; i >= 0; i--) {
+				observers.get(i).onItemRangeRemoved(positionStart, itemCount);
+			}
+		}
+	}
+
+	/**
+	 * Convenience Adapter implementation wrapping an Array. If the backing list is modified, call the
+	 * appropriate notifyItem* method.
+	 *
+	 * @param <T>
+	 */
+	@SuppressWarnings("unused")
+	public static class ArrayAdapter<T> extends BaseAdapter {
+
+		private List<T> items;
+
+		public ArrayAdapter(List<T> items) {
+			this.items = items;
+		}
+
+		public ArrayAdapter(T[] items) {
+			this.items = Arrays.asList(items);
+		}
+
+		@Override
+		public int getCount() {
+			return items.size();
+		}
+
+		@Override
+		public MenuItem getItem(int position) {
+			return (MenuItem) items.get(position);
+		}
+	}
+
+	/**
+	 * MenuItem vended by AsyncAdapter in place of items which haven't loaded yet. Placeholders can't be
+	 * selected. By default a placeholder draws a faint rounded rect, subclass to draw something else.
+	 */
+	@SuppressWarnings("unused")
+	public static class PlaceholderMenuItem extends MenuItem {
+
+		static final int ID = -1;
+
+		Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		RectF rect = new RectF();
+
+		public PlaceholderMenuItem() {
+			super(ID);
+			paint.setColor(0x1F808080);
+		}
+
+		@Override
+		public void onDraw(Canvas canvas, RectF bounds, float degreeSelected) {
+			float inset = Math.min(bounds.width(), bounds.height()) * 0.15f;
+			rect.set(bounds);
+			rect.inset(inset, inset);
+			canvas.drawRoundRect(rect, inset, inset, paint);
+		}
+	}
+
+	/**
+	 * Adapter whose items are loaded on a background Executor, for adapters backed by slow storage. The menu
+	 * is laid out right away from getCount, with placeholders drawn for items which haven't loaded. Each item
+	 * is loaded the first time the menu asks for it, and its cell is redrawn when it arrives.
+	 * <p>
+	 * getCount is called on the UI thread, so it must be fast. When the backing data changes call the
+	 * appropriate notifyItem* method on the UI thread; loads made stale by the change are discarded.
+	 */
+	@SuppressWarnings("unused")
+	public static abstract class AsyncAdapter extends BaseAdapter {
+
+		private final Executor executor;
+		private final Handler handler = new Handler(Looper.getMainLooper());
+		private MenuItem placeholderItem;
+
+		// indexed by adapter position, and only touched on the UI thread
+		private MenuItem[] loadedItems = new MenuItem[0];
+		private LoadTask[] loadTasks = new LoadTask[0];
+		private int trackedCount;
+
+		/**
+		 * @param executor the executor onLoadItem is called on
+		 */
+		public AsyncAdapter(Executor executor) {
+			this.executor = executor;
+		}
+
+		/**
+		 * Load the item at a given position. This is called on the adapter's executor, not the UI thread.
+		 *
+		 * @param position the adapter position of the item to load
+		 * @return the item
+		 */
+		protected abstract MenuItem onLoadItem(int position);
+
+		/**
+		 * Create the item drawn in place of items which haven't loaded. It is called once, and the placeholder
+		 * is shared by every position.
+		 *
+		 * @return a PlaceholderMenuItem
+		 */
+		protected PlaceholderMenuItem onCreatePlaceholderItem() {
+			return new PlaceholderMenuItem();
+		}
+
+		/**
+		 * @param position an adapter position
+		 * @return true if the item at that position has loaded
+		 */
+		public boolean isItemLoaded(int position) {
+			return position < trackedCount && loadedItems[position] != null;
+		}
+
+		/**
+		 * @param position the adapter position of the item
+		 * @return the item if it has loaded, otherwise a placeholder, and the item's load is started if it hasn't been
+		 */
+		@Override
+		public MenuItem getItem(int position) {
+			track(getCount());
+
+			MenuItem item = loadedItems[position];
+			if (item != null) {
+				return item;
+			}
+
+			if (loadTasks[position] == null) {
+				LoadTask task = new LoadTask(position);
+				loadTasks[position] = task;
+				executor.execute(task);
+			}
+
+			if (placeholderItem == null) {
+				placeholderItem = onCreatePlaceholderItem();
+			}
+			return placeholderItem;
+		}
+
+		/**
+		 * @param position the adapter position of an item
+		 * @return the id of the item at that position if it has loaded, otherwise the placeholder's id. Override if
+		 * ids can be had without loading items
+		 */
+		@Override
+		public int getItemId(int position) {
+			return isItemLoaded(position) ? loadedItems[position].getId() : PlaceholderMenuItem.ID;
+		}
+
+		@Override
+		public void notifyDataSetChanged() {
+			cancelLoads(0);
+			Arrays.fill(loadedItems, null);
+			trackedCount = 0;
+			super.notifyDataSetChanged();
+		}
+
+		@Override
+		public void notifyItemRangeChanged(int positionStart, int itemCount) {
+			// the changed items are loaded again
+			int positionEnd = Math.min(positionStart + itemCount, trackedCount);
+			for (int i = positionStart; i < positionEnd; i++) {
+				cancelLoad(i);
+				loadedItems[i] = null;
+			}
+			super.notifyItemRangeChanged(positionStart, itemCount);
+		}
+
+		@Override
+		public void notifyItemRangeInserted(int positionStart, int itemCount) {
+			// pending loads from positionStart onwards would load the wrong positions, they're restarted as the menu re-fetches those items
+			if (positionStart < trackedCount) {
+				cancelLoads(positionStart);
+				int previousCount = trackedCount;
+				track(trackedCount + itemCount);
+				System.arraycopy(loadedItems, positionStart, loadedItems, positionStart + itemCount, previousCount - positionStart);
+				Arrays.fill(loadedItems, positionStart, positionStart + itemCount, null);
+			}
+			super.notifyItemRangeInserted(positionStart, itemCount);
+		}
+
+		@Override
+		public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+			if (positionStart < trackedCount) {
+				cancelLoads(positionStart);
+				int positionEnd = Math.min(positionStart + itemCount, trackedCount);
+				System.arraycopy(loadedItems, positionEnd, loadedItems, positionStart, trackedCount - positionEnd);
+				Arrays.fill(loadedItems, trackedCount - (positionEnd - positionStart), trackedCount, null);
+				trackedCount -= positionEnd - positionStart;
+			}
+			super.notifyItemRangeRemoved(positionStart, itemCount);
+		}
+
+		/**
+		 * Grow the per-position arrays to cover a given number of positions
+		 */
+		private void track(int count) {
+			if (loadedItems.length < count) {
+				int capacity = Math.max(count, loadedItems.length + loadedItems.length / 2);
+				loadedItems = Arrays.copyOf(loadedItems, capacity);
+				loadTasks = Arrays.copyOf(loadTasks, capacity);
+			}
+			trackedCount = Math.max(trackedCount, count);
+		}
+
+		private void cancelLoads(int positionStart) {
+			for (int i = positionStart; i < trackedCount; i++) {
+				cancelLoad(i);
+			}
+		}
+
+		private void cancelLoad(int position) {
+			LoadTask task = loadTasks[position];
+			if (task != null) {
+				task.canceled = true;
+				loadTasks[position] = null;
+			}
+		}
+
+		/**
+		 * Called on the UI thread when an item has loaded
+		 */
+		private void onItemLoaded(LoadTask task, MenuItem item) {
+			if (task.canceled || item == null) {
+				return;
+			}
+
+			loadTasks[task.position] = null;
+			loadedItems[task.position] = item;
+			super.notifyItemRangeChanged(task.position, 1);
+		}
+
+		private class LoadTask implements Runnable {
+			final int position;
+			volatile boolean canceled;
+
+			LoadTask(int position) {
+				this.position = position;
+			}
+
+			@Override
+			public void run() {
+				if (canceled) {
+					return;
+				}
+
+				final MenuItem item = onLoadItem(position);
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						onItemLoaded(LoadTask.this, item);
+					}
+				});
+			}
+		}
+	}
+
+
+	@SuppressWarnings("unused")
+	private static final String TAG = FlyoutMenuView.class.getSimpleName();
+
+	private static final int ANIMATION_DURATION_MILLIS = 225; // 225 normal
+	private static final TimeInterpolator ANIMATION_INTERPOLATOR = new AccelerateDecelerateInterpolator();
+	private static final float DEFAULT_MENU_ANIMATION_DAMPING_RATIO = 0.85f;
+
+	private static final int DEFAULT_BUTTON_ELEVATION_DP = 4;
+	private static final int DEFAULT_MENU_ELEVATION_DP = 8;
+
+	private static final int MENU_CORNER_RADIUS_DP = 4;
+	private static final int DEFAULT_ITEM_SIZE_DP = 48;
+	private static final int DEFAULT_ITEM_MARGIN_DP = 8;
+
+	private static final int DEFAULT_BUTTON_SIZE_DP = 56;
+
+	private static final float DEFAULT_HORIZONTAL_MENU_ANCHOR = 1f;
+	private static final boolean DEFAULT_HORIZONTAL_MENU_ANCHOR_OUTSIDE = false;
+	private static final float DEFAULT_VERTICAL_MENU_ANCHOR = 0.5f;
+	private static final boolean DEFAULT_VERTICAL_MENU_ANCHOR_OUTSIDE = false;
+	private static final float DEFAULT_MENU_MARGIN_DP = 16;
+
+	// how far a scrolling menu moves per frame while a drag rests at its edge
+	private static final int MENU_AUTO_SCROLL_SPEED_DP = 12;
+
+	// how long a drag must rest on an item with a submenu to open it
+	private static final int SUBMENU_DWELL_MILLIS = 300;
+
+	/**
+	 * Reveal the menu by clipping its content with an animated oval path on every frame
+	 */
+	public static final int REVEAL_MODE_CLIP_PATH = 0;
+
+	/**
+	 * Reveal the menu by rendering its content into a hardware layer and animating an outline clip
+	 */
+	public static final int REVEAL_MODE_HARDWARE = 1;
+
+	/**
+	 * Draw button and menu shadows from pre-rendered bitmaps
+	 */
+	public static final int SHADOW_MODE_BITMAP = 0;
+
+	/**
+	 * Cast button and menu shadows natively, via view elevation and outlines
+	 */
+	public static final int SHADOW_MODE_ELEVATION = 1;
+
+	private static final int SHADOW_COLOR = 0xFF000000;
+	private static final int SHADOW_ALPHA = 32;
+
+
+	Paint paint;
+
+	@ColorInt
+	int buttonBackgroundColor = 0xFFFFFFFF;
+
+	@ColorInt
+	int menuBackgroundColor = 0xFFFFFFFF;
+
+	@ColorInt
+	int selectedItemBackgroundColor = 0x0; // defaults to transparent
+
+	@ColorInt
+	int shieldColor = 0x77303030;
+
+	boolean shieldVisible;
+
+	float buttonElevation;
+	float menuElevation;
+
+	int buttonSize;
+	PointF buttonCenter;
+	RectF buttonFillOval = new RectF();
+	int buttonRadius;
+
+	Drawable buttonDrawable;
+	Bitmap buttonShadowBitmap;
+
+	float horizontalMenuAnchor = 0.5f;
+	float verticalMenuAnchor = 0.5f;
+	boolean horizontalMenuAnchorOutside = false;
+	boolean verticalMenuAnchorOutside = false;
+	float menuMargin = 0;
+	int maxMenuWidth = 0;
+	int maxMenuHeight = 0;
+	int menuAnimationDuration = ANIMATION_DURATION_MILLIS;
+	float menuAnimationDampingRatio = DEFAULT_MENU_ANIMATION_DAMPING_RATIO;
+
+	int itemWidth;
+	int itemHeight;
+	int itemMargin;
+	Adapter adapter;
+	Layout layout;
+	MenuItemIdIndex itemIdIndex = new MenuItemIdIndex();
+	boolean itemIdIndexValid;
+	int adapterChangeCount;
+	MenuItem selectedMenuItem;
+	MenuItem previouslySelectedMenuItem;
+	RectF selectedMenuItemBounds = new RectF();
+
+	SelectionListener selectionListener;
+	ButtonRenderer buttonRenderer;
+
+	// menuAnimation and selectionAnimation drive menuOpenTransition and selectionTransition, via transitionListener
+	Transition menuAnimation;
+	Transition selectionAnimation;
+	boolean menuAnimationUpdated;
+	boolean selectionAnimationUpdated;
+
+	// tracks drags from the button, so a release can hand its velocity to the closing menu
+	VelocityTracker velocityTracker;
+	float menuOpenTransition; // 0 is closed, 1 is menuOpen
+	float selectionTransition;
+
+	boolean menuOverlayViewAttached;
+	MenuOverlayView menuOverlayView;
+	boolean menuPreparationScheduled;
+
+	// this view's bounds, and the area menus may occupy, in the window's coordinate space. These are tracked
+	// via view tree listeners, and refreshed when the menu opens, rather than queried each time they're needed.
+	Rect windowRect = new Rect();
+	Rect menuBounds = new Rect();
+	int[] windowLocation = new int[2];
+	boolean windowGeometryValid;
+
+	ViewTreeObserver.OnGlobalLayoutListener windowGeometryLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+		@Override
+		public void onGlobalLayout() {
+			updateWindowGeometry();
+		}
+	};
+
+	ViewTreeObserver.OnScrollChangedListener windowGeometryScrollListener = new ViewTreeObserver.OnScrollChangedListener() {
+		@Override
+		public void onScrollChanged() {
+			updateWindowGeometry();
+		}
+	};
+
+	boolean dialogMode = false;
+	boolean wasOpenedAsDialog = false;
+
+	int revealMode = REVEAL_MODE_CLIP_PATH;
+	int shadowMode = SHADOW_MODE_BITMAP;
+	boolean itemCacheEnabled = false;
+
+	float buttonOutlineAlpha = -1;
+	ViewOutlineProvider buttonOutlineProvider = new ViewOutlineProvider() {
+		@Override
+		public void getOutline(View view, Outline outline) {
+			float alpha = getButtonAlpha();
+			if (buttonCenter == null || alpha <= 0) {
+				outline.setEmpty();
+				return;
+			}
+
+			// matches the scaling applied in drawButton
+			float radius = buttonRadius * alpha;
+			outline.setOval(
+					(int) (buttonCenter.x - radius),
+					(int) (buttonCenter.y - radius),
+					(int) (buttonCenter.x + radius),
+					(int) (buttonCenter.y + radius));
+			outline.setAlpha(alpha * alpha * alpha);
+		}
+	};
+	boolean menuDisplayListEnabled = false;
+
+	public FlyoutMenuView(Context context) {
+		super(context);
+		init(null, 0);
+	}
+
+	public FlyoutMenuView(Context context, AttributeSet attrs) {
+		super(context, attrs);
+		init(attrs, 0);
+	}
+
+	public FlyoutMenuView(Context context, AttributeSet attrs, int defStyle) {
+		super(context, attrs, defStyle);
+		init(attrs, defStyle);
+	}
+
+	private void init(AttributeSet attrs, int defStyle) {
+
+		// workaround for lack of clip path in API < 18
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+			setLayerType(LAYER_TYPE_SOFTWARE, null);
+		}
+
+		paint = new Paint();
+		paint.setAntiAlias(true);
+
+		// TODO see how to get 'windowBackground' from android.R.style.ThemeOverlay_Material_Dialog
+		// https://android.googlesource.com/platform/frameworks/base/+/refs/heads/master/core/res/res/values/themes_material.xml
+		// ThemeOverlay.Material.Dialog -> windowBackground -> @drawable/dialog_background_material
+		// https://android.googlesource.com/platform/frameworks/base/+/refs/heads/master/core/res/res/drawable/dialog_background_material.xml
+		// ?attr/colorBackground
+		// https://android.googlesource.com/platform/frameworks/base/+/refs/heads/master/core/res/res/values/themes_material.xml#47
+		// But where's the ALPHA coming from? colorBackground is opaque...
 
 
 		// Load attributes
@@ -418,6 +1329,10 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		setItemMargin(a.getDimensionPixelSize(R.styleable.FlyoutMenuView_fmItemMargin, (int) dp2px(DEFAULT_ITEM_MARGIN_DP)));
 
 		setMenuMargin(a.getDimensionPixelSize(R.styleable.FlyoutMenuView_fmMenuMargin, (int) dp2px(DEFAULT_MENU_MARGIN_DP)));
+		setMaxMenuWidth(a.getDimensionPixelSize(R.styleable.FlyoutMenuView_fmMaxMenuWidth, 0));
+		setMaxMenuHeight(a.getDimensionPixelSize(R.styleable.FlyoutMenuView_fmMaxMenuHeight, 0));
+		setMenuAnimationDuration(a.getInt(R.styleable.FlyoutMenuView_fmMenuAnimationDuration, ANIMATION_DURATION_MILLIS));
+		setMenuAnimationDampingRatio(a.getFloat(R.styleable.FlyoutMenuView_fmMenuAnimationDampingRatio, DEFAULT_MENU_ANIMATION_DAMPING_RATIO));
 		setHorizontalMenuAnchor(a.getFloat(R.styleable.FlyoutMenuView_fmHorizontalMenuAnchor, DEFAULT_HORIZONTAL_MENU_ANCHOR));
 		setHorizontalMenuAnchorOutside(a.getBoolean(R.styleable.FlyoutMenuView_fmHorizontalMenuAnchorOutside, DEFAULT_HORIZONTAL_MENU_ANCHOR_OUTSIDE));
 		setVerticalMenuAnchor(a.getFloat(R.styleable.FlyoutMenuView_fmVerticalMenuAnchor, DEFAULT_VERTICAL_MENU_ANCHOR));
@@ -440,11 +1355,28 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 	@SuppressWarnings("unused")
 	public void setAdapter(Adapter adapter) {
+		if (this.adapter instanceof BaseAdapter) {
+			((BaseAdapter) this.adapter).unregisterObserver(adapterObserver);
+		}
+
 		this.adapter = adapter;
+		invalidateItemIdIndex();
+		if (adapter instanceof BaseAdapter) {
+			adapterChangeCount = ((BaseAdapter) adapter).changeCount;
+		}
+
+		// the observer is only registered while attached, so a long-lived adapter doesn't keep detached views alive
+		if (adapter instanceof BaseAdapter && isAttachedToWindow()) {
+			((BaseAdapter) adapter).registerObserver(adapterObserver);
+		}
 
 		if (menuOverlayView != null) {
 			menuOverlayView.invalidateMenuItemLayout();
+			menuOverlayView.invalidateItemMeasurements();
+			menuOverlayView.invalidateItemCache();
 		}
+
+		scheduleMenuPreparation();
 	}
 
 	public Layout getLayout() {
@@ -457,6 +1389,8 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		if (menuOverlayView != null) {
 			menuOverlayView.invalidateMenuItemLayout();
 		}
+
+		scheduleMenuPreparation();
 	}
 
 	@Override
@@ -466,6 +1400,58 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 			ViewGroup v = (ViewGroup) getParent();
 			v.setClipChildren(false);
 		}
+
+		windowGeometryValid = false;
+		getViewTreeObserver().addOnGlobalLayoutListener(windowGeometryLayoutListener);
+		getViewTreeObserver().addOnScrollChangedListener(windowGeometryScrollListener);
+
+		if (adapter instanceof BaseAdapter) {
+			BaseAdapter baseAdapter = (BaseAdapter) adapter;
+			baseAdapter.registerObserver(adapterObserver);
+
+			// catch up with any notifications made while detached
+			if (baseAdapter.changeCount != adapterChangeCount) {
+				adapterObserver.onChanged();
+			} else {
+				scheduleMenuPreparation();
+			}
+		} else {
+			scheduleMenuPreparation();
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		getViewTreeObserver().removeOnGlobalLayoutListener(windowGeometryLayoutListener);
+		getViewTreeObserver().removeOnScrollChangedListener(windowGeometryScrollListener);
+		windowGeometryValid = false;
+
+		if (adapter instanceof BaseAdapter) {
+			BaseAdapter baseAdapter = (BaseAdapter) adapter;
+			baseAdapter.unregisterObserver(adapterObserver);
+			adapterChangeCount = baseAdapter.changeCount;
+		}
+
+		if (menuPreparationScheduled) {
+			Looper.myQueue().removeIdleHandler(menuPreparationIdleHandler);
+			menuPreparationScheduled = false;
+		}
+
+		if (velocityTracker != null) {
+			velocityTracker.recycle();
+			velocityTracker = null;
+		}
+	}
+
+	@Override
+	protected void onVisibilityChanged(View changedView, int visibility) {
+		super.onVisibilityChanged(changedView, visibility);
+
+		// hidden buttons aren't prepared, so prepare once shown
+		if (visibility == VISIBLE) {
+			scheduleMenuPreparation();
+		}
 	}
 
 	@Override
@@ -507,33 +1493,158 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		super.onSizeChanged(w, h, oldw, oldh);
 		updateLayoutInfo();
 		invalidate();
+
+		// the button has likely moved, so the menu is positioned anew
+		scheduleMenuPreparation();
+	}
+
+	/**
+	 * @return this view's bounds in the window's coordinate space
+	 */
+	Rect getWindowRect() {
+		if (!windowGeometryValid) {
+			updateWindowGeometry();
+		}
+		return windowRect;
+	}
+
+	/**
+	 * @return the area of the window menus may occupy: the root view, less the system window insets
+	 */
+	Rect getMenuBounds() {
+		if (!windowGeometryValid) {
+			updateWindowGeometry();
+		}
+		return menuBounds;
+	}
+
+	/**
+	 * Bring the cached window geometry up to date, and if it changed, have the menu positioned anew
+	 */
+	void updateWindowGeometry() {
+		getLocationInWindow(windowLocation);
+		int left = windowLocation[0];
+		int top = windowLocation[1];
+		int right = left + getWidth();
+		int bottom = top + getHeight();
+
+		View rootView = getRootView();
+		int boundsLeft = 0;
+		int boundsTop = 0;
+		int boundsRight = rootView.getWidth();
+		int boundsBottom = rootView.getHeight();
+
+		// root window insets are only available from API 23, earlier the menu is only kept within the root view
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			WindowInsets insets = getRootWindowInsets();
+			if (insets != null) {
+				boundsLeft += insets.getSystemWindowInsetLeft();
+				boundsTop += insets.getSystemWindowInsetTop();
+				boundsRight -= insets.getSystemWindowInsetRight();
+				boundsBottom -= insets.getSystemWindowInsetBottom();
+			}
+		}
+
+		boolean buttonMoved = left != windowRect.left || top != windowRect.top || right != windowRect.right || bottom != windowRect.bottom;
+		boolean boundsChanged = boundsLeft != menuBounds.left || boundsTop != menuBounds.top || boundsRight != menuBounds.right || boundsBottom != menuBounds.bottom;
+		windowRect.set(left, top, right, bottom);
+		menuBounds.set(boundsLeft, boundsTop, boundsRight, boundsBottom);
+
+		boolean wasValid = windowGeometryValid;
+		windowGeometryValid = true;
+		if (!wasValid || (!buttonMoved && !boundsChanged)) {
+			return;
+		}
+
+		if (menuOverlayView != null) {
+			// an open menu follows a moved button when the overlay next prepares a frame, but a closed one is
+			// positioned anew, as it is when the bounds change
+			if (boundsChanged || (buttonMoved && !menuOverlayViewAttached)) {
+				menuOverlayView.invalidateMenuFill();
+			}
+
+			if (menuOverlayViewAttached) {
+				menuOverlayView.invalidate();
+			}
+		}
+
+		scheduleMenuPreparation();
 	}
 
+	/**
+	 * Schedule the menu's geometry to be computed when the UI thread is next idle, rather than in the
+	 * first frame of the menu's opening animation
+	 */
+	void scheduleMenuPreparation() {
+		if (!menuPreparationScheduled && isAttachedToWindow()) {
+			menuPreparationScheduled = true;
+			Looper.myQueue().addIdleHandler(menuPreparationIdleHandler);
+		}
+	}
+
+	/**
+	 * Lay out the menu's items and compute its rect, clip path and reveal radius, and create its shadow, ahead
+	 * of the menu being opened. This is a no-op if the menu is open, or its geometry is already up to date.
+	 * Buttons which aren't shown aren't prepared, nor are menus whose adapter is an AsyncAdapter, since laying
+	 * them out would start loading every item before the user ever opens the menu.
+	 */
+	void prepareMenu() {
+		if (adapter == null || layout == null || menuOverlayViewAttached || !isAttachedToWindow() || !isShown()) {
+			return;
+		}
+
+		if (adapter instanceof AsyncAdapter) {
+			return;
+		}
+
+		if (menuOverlayView == null) {
+			menuOverlayView = new MenuOverlayView(getContext(), this);
+		}
+		menuOverlayView.prepareMenu();
+	}
+
+	MessageQueue.IdleHandler menuPreparationIdleHandler = new MessageQueue.IdleHandler() {
+		@Override
+		public boolean queueIdle() {
+			menuPreparationScheduled = false;
+			prepareMenu();
+			return false;
+		}
+	};
+
 	@Override
 	protected void onDraw(Canvas canvas) {
+		float alpha = getButtonAlpha();
+		if (alpha > 0) {
+			drawButton(canvas, alpha);
+		}
+	}
 
+	/**
+	 * @return the opacity and scale of the button, which fades out during a slice of the menu open transition
+	 */
+	float getButtonAlpha() {
 		final float pinion = 0.25f;
 		if (menuOpenTransition < pinion) {
-			drawButton(canvas, 1 - menuOpenTransition / pinion);
+			return 1 - menuOpenTransition / pinion;
 		}
+		return 0;
 	}
 
 	void drawButton(Canvas canvas, float alpha) {
 
 		// scale button down as it fades out
 		if (alpha < 1) {
-			Matrix m = new Matrix();
-			m.preTranslate(-buttonCenter.x, -buttonCenter.y);
-			m.postScale(alpha, alpha);
-			m.postTranslate(buttonCenter.x, buttonCenter.y);
-			canvas.concat(m);
+			canvas.scale(alpha, alpha, buttonCenter.x, buttonCenter.y);
 		}
 
-		if (buttonElevation > 0) {
+		if (buttonElevation > 0 && shadowMode == SHADOW_MODE_BITMAP) {
 			if (buttonShadowBitmap == null) {
-				buttonShadowBitmap = createButtonShadowBitmap();
+				buttonShadowBitmap = getButtonShadowBitmap();
 			}
 
+			// the shadow bitmap is an alpha mask, tinted by the paint color
+			paint.setColor(SHADOW_COLOR);
 			paint.setAlpha((int) ((alpha * alpha * alpha) * 255));
 			float buttonShadowOffset = buttonElevation / 2;
 			canvas.drawBitmap(buttonShadowBitmap, buttonCenter.x - buttonShadowBitmap.getWidth() / 2, buttonCenter.y - buttonShadowBitmap.getHeight() / 2 + buttonShadowOffset, paint);
@@ -569,11 +1680,36 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	public boolean onTouchEvent(MotionEvent event) {
 		switch (event.getAction()) {
 			case MotionEvent.ACTION_DOWN:
+				if (velocityTracker == null) {
+					velocityTracker = VelocityTracker.obtain();
+				} else {
+					velocityTracker.clear();
+				}
+				velocityTracker.addMovement(event);
+
 				animateMenuOpenChange(true, false);
 				wasOpenedAsDialog = false;
 				return true;
 
+			case MotionEvent.ACTION_MOVE:
+				if (velocityTracker != null) {
+					velocityTracker.addMovement(event);
+				}
+
+				if (menuOverlayView != null && menuOverlayViewAttached) {
+					// scroll the menu while the drag rests near its edge
+					menuOverlayView.updateMenuAutoScrollAtFlyoutMenuViewRelativePosition(event.getX(), event.getY());
+					menuOverlayView.updateSubmenuDwellAtFlyoutMenuViewRelativePosition(event.getX(), event.getY());
+				}
+				return true;
+
 			case MotionEvent.ACTION_UP:
+				if (menuOverlayView != null) {
+					menuOverlayView.stopMenuAutoScroll();
+					menuOverlayView.cancelSubmenuDwell();
+				}
+
+				float closeVelocity = getMenuCloseVelocity(event);
 
 				// if we're configured to behave in dialog mode, mark that we were opened in dialog
 				// mode IFF user release touch on top of the button. this will signal to MenuOverlayView
@@ -588,20 +1724,66 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 					item = menuOverlayView.findMenuItemAtFlyoutMenuViewRelativePosition(event.getX(), event.getY());
 				}
 
-				dismissMenuWithMenuItem(item);
+				// releasing on an item with a submenu opens it, and the menu continues as a dialog
+				if (item != null && item.hasSubmenu()) {
+					menuOverlayView.openSubmenuAtFlyoutMenuViewRelativePosition(event.getX(), event.getY());
+					wasOpenedAsDialog = true;
+					return true;
+				}
+
+				dismissMenuWithMenuItem(item, closeVelocity);
 				return true;
 		}
 
 		return super.onTouchEvent(event);
 	}
 
+	/**
+	 * Convert the velocity of a drag from the button, released at event, into a velocity for the menu's
+	 * open transition. The edge of the menu's reveal follows the finger, so a flick back towards the button
+	 * closes the menu as fast as the finger moved. Flicks away from the button don't slow the menu's closing.
+	 *
+	 * @param event the ACTION_UP ending the drag
+	 * @return the rate of change of menuOpenTransition per second, 0 or negative
+	 */
+	float getMenuCloseVelocity(MotionEvent event) {
+		if (velocityTracker == null) {
+			return 0;
+		}
+
+		velocityTracker.addMovement(event);
+		velocityTracker.computeCurrentVelocity(1000);
+		float velocityX = velocityTracker.getXVelocity();
+		float velocityY = velocityTracker.getYVelocity();
+		velocityTracker.recycle();
+		velocityTracker = null;
+
+		if (menuOverlayView == null) {
+			return 0;
+		}
+
+		float dx = event.getX() - getWidth() / 2f;
+		float dy = event.getY() - getHeight() / 2f;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy);
+		float revealDistance = menuOverlayView.menuOpenRadius - buttonRadius;
+		if (distance < 1 || revealDistance <= 0) {
+			return 0;
+		}
+
+		// the finger's speed away from the button, as a fraction of the reveal per second
+		float radialVelocity = (velocityX * dx + velocityY * dy) / distance;
+		return Math.min(radialVelocity / revealDistance, 0);
+	}
+
 	/**
 	 * Activities or Fragments may want to dismiss a FlyoutMenu on back button press. If the menu is open,
 	 * this will dismiss it and return true. If the menu was not open, this will perform no action and will return false.
 	 * @return dismisses the menu, returning true if the menu was open, false if not.
 	 */
 	public boolean dismiss(){
-		if (menuOverlayView != null) {
+		// the overlay may exist before the menu is ever opened, since it's prepared at idle, so what counts is
+		// whether it's attached and the menu is opening or open rather than already closing
+		if (menuOverlayViewAttached && menuAnimation != null && menuAnimation.getEndValue() == 1) {
 			animateMenuOpenChange(false, false);
 			return true;
 		}
@@ -610,58 +1792,133 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	}
 
 	void dismissMenuWithMenuItem(@Nullable MenuItem item) {
+		dismissMenuWithMenuItem(item, 0);
+	}
+
+	void dismissMenuWithMenuItem(@Nullable MenuItem item, float velocity) {
 		if (item != null) {
 			setSelectedMenuItem(item);
 		} else if (selectionListener != null) {
 			selectionListener.onDismissWithoutSelection(this);
 		}
 
-		// close menu - delay iff an item was selected
-		animateMenuOpenChange(false, item != null);
+		// close menu - delay iff an item was selected. the selection holds the menu open, so takes no velocity
+		animateMenuOpenChange(false, item != null, item != null ? 0 : velocity);
+	}
+
+	void animateMenuOpenChange(boolean open, boolean delay) {
+		animateMenuOpenChange(open, delay, 0);
 	}
 
-	void animateMenuOpenChange(final boolean open, boolean delay) {
+	/**
+	 * Spring the menu open or closed. A spring already in motion keeps its velocity, so reversing it part way
+	 * only takes as long as undoing the distance it covered.
+	 *
+	 * @param open     true to open the menu, false to close it
+	 * @param delay    if true, the menu only heads for its new state after the selection transition has played
+	 * @param velocity a velocity to hand off to the spring, in units of menuOpenTransition per second, or 0 to keep its own
+	 */
+	void animateMenuOpenChange(boolean open, boolean delay, float velocity) {
+		if (menuAnimation == null) {
+			menuAnimation = new Transition(ANIMATION_INTERPOLATOR, transitionListener);
+
+			// the menu is drawn no further than fully open or closed, so the spring ends on getting there. Otherwise
+			// a closing menu's overshoot would keep its invisible overlay attached, swallowing touches, until it settled.
+			menuAnimation.setOvershootClamped(true);
+		}
 
-		if (menuAnimator != null) {
-			menuAnimator.cancel();
+		if (!menuAnimation.isRunning()) {
+			// menuOpenTransition may have been changed while the spring was at rest
+			menuAnimation.setValue(menuOpenTransition);
 		}
 
-		menuAnimator = ValueAnimator.ofFloat(menuOpenTransition, open ? 1 : 0);
-		menuAnimator.setDuration(ANIMATION_DURATION_MILLIS);
-		menuAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-		menuAnimator.addUpdateListener(this);
-		menuAnimator.setStartDelay(delay ? ANIMATION_DURATION_MILLIS : 0);
+		if (velocity != 0) {
+			menuAnimation.setVelocity(velocity);
+		}
 
-		menuAnimator.addListener(new Animator.AnimatorListener() {
+		if (open) {
+			attachMenuOverlayView();
+		}
 
-			boolean canceled = false;
+		menuAnimation.setSpring(menuAnimationDuration, menuAnimationDampingRatio);
+		menuAnimation.springTo(open ? 1 : 0, delay ? ANIMATION_DURATION_MILLIS : 0);
+	}
 
-			@Override
-			public void onAnimationStart(Animator animation) {
-				if (open) {
-					attachMenuOverlayView();
-				}
+	AdapterObserver adapterObserver = new AdapterObserver() {
+		@Override
+		public void onChanged() {
+			adapterChangeCount = ((BaseAdapter) adapter).changeCount;
+			invalidateItemIdIndex();
+			resolveSelection();
+			if (menuOverlayView != null) {
+				menuOverlayView.invalidateMenuItemLayout();
+				menuOverlayView.invalidateItemMeasurements();
+				menuOverlayView.invalidateItemCache();
+				menuOverlayView.invalidate();
 			}
+			scheduleMenuPreparation();
+		}
 
-			@Override
-			public void onAnimationEnd(Animator animation) {
-				if (!open && !canceled) {
-					detachMenuOverlayView();
-				}
+		@Override
+		public void onItemRangeChanged(int positionStart, int itemCount) {
+			adapterChangeCount = ((BaseAdapter) adapter).changeCount;
+			invalidateItemIdIndex();
+			if (menuOverlayView != null) {
+				menuOverlayView.onItemRangeChanged(positionStart, itemCount);
 			}
+		}
 
-			@Override
-			public void onAnimationCancel(Animator animation) {
-				canceled = true;
+		@Override
+		public void onItemRangeInserted(int positionStart, int itemCount) {
+			adapterChangeCount = ((BaseAdapter) adapter).changeCount;
+			invalidateItemIdIndex();
+			if (menuOverlayView != null) {
+				menuOverlayView.onItemRangeInserted(positionStart, itemCount);
 			}
+		}
 
-			@Override
-			public void onAnimationRepeat(Animator animation) {
+		@Override
+		public void onItemRangeRemoved(int positionStart, int itemCount) {
+			adapterChangeCount = ((BaseAdapter) adapter).changeCount;
+			invalidateItemIdIndex();
+			resolveSelection();
+			if (menuOverlayView != null) {
+				menuOverlayView.onItemRangeRemoved(positionStart, itemCount);
 			}
-		});
+		}
+	};
 
-		menuAnimator.start();
-	}
+	Transition.Listener transitionListener = new Transition.Listener() {
+
+		@Override
+		public void onTransitionUpdate(Transition transition) {
+			if (transition == menuAnimation) {
+				// the spring stops at its end value, but a velocity away from it may first carry it past the other end
+				float value = Math.max(0, Math.min(transition.getValue(), 1));
+				if (value != menuOpenTransition) {
+					menuOpenTransition = value;
+					menuAnimationUpdated = true;
+				}
+			} else if (transition == selectionAnimation) {
+				selectionTransition = transition.getValue();
+				selectionAnimationUpdated = true;
+			}
+		}
+
+		@Override
+		public void onTransitionEnd(Transition transition) {
+			if (transition == menuAnimation && transition.getEndValue() == 0) {
+				detachMenuOverlayView();
+			}
+		}
+
+		@Override
+		public void onTransitionsAdvanced() {
+			onAnimationFrame(menuAnimationUpdated, selectionAnimationUpdated);
+			menuAnimationUpdated = false;
+			selectionAnimationUpdated = false;
+		}
+	};
 
 
 	/**
@@ -720,7 +1977,9 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	public void setItemWidth(int itemWidth) {
 		this.itemWidth = itemWidth;
 		if (menuOverlayView != null) {
+			// items are measured relative to the default item size
 			menuOverlayView.invalidateMenuItemLayout();
+			menuOverlayView.invalidateItemMeasurements();
 		}
 	}
 
@@ -740,7 +1999,9 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	public void setItemHeight(int itemHeight) {
 		this.itemHeight = itemHeight;
 		if (menuOverlayView != null) {
+			// items are measured relative to the default item size
 			menuOverlayView.invalidateMenuItemLayout();
+			menuOverlayView.invalidateItemMeasurements();
 		}
 	}
 
@@ -781,6 +2042,7 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	public void setMenuBackgroundColor(@ColorInt int menuBackgroundColor) {
 		this.menuBackgroundColor = ColorUtils.setAlphaComponent(menuBackgroundColor, 255);
 		if (menuOverlayView != null) {
+			menuOverlayView.invalidateMenuPicture();
 			menuOverlayView.invalidate();
 		}
 	}
@@ -843,6 +2105,7 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	public void setSelectedItemBackgroundColor(int selectedItemBackgroundColor) {
 		this.selectedItemBackgroundColor = selectedItemBackgroundColor;
 		if (menuOverlayView != null) {
+			menuOverlayView.invalidateMenuContent();
 			menuOverlayView.invalidate();
 		}
 	}
@@ -962,106 +2225,467 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	}
 
 	/**
-	 * Set the margin outside the menu. This margin will be taken into account when the layout of the menu tries to
-	 * prevent the menu from going off screen or overlaying the navigation bar
-	 *
-	 * @param menuMargin the margin in pixels outside the menu
+	 * Set the margin outside the menu. This margin will be taken into account when the layout of the menu tries to
+	 * prevent the menu from going off screen or overlaying the navigation bar
+	 *
+	 * @param menuMargin the margin in pixels outside the menu
+	 */
+	public void setMenuMargin(float menuMargin) {
+		this.menuMargin = menuMargin;
+		if (menuOverlayView != null) {
+			menuOverlayView.invalidateMenuFill();
+		}
+	}
+
+	/**
+	 * @return the maximum width in pixels of the menu, or 0 if it is only limited by the screen
+	 */
+	@SuppressWarnings("unused")
+	public int getMaxMenuWidth() {
+		return maxMenuWidth;
+	}
+
+	/**
+	 * Limit the width of the menu. A menu whose items don't fit scrolls, and only the items in view are drawn.
+	 * Menus are always limited to the usable screen area, less the menu margin. Radial menus are not limited.
+	 *
+	 * @param maxMenuWidth the maximum width in pixels of the menu, or 0 to only limit it to the screen
+	 */
+	public void setMaxMenuWidth(int maxMenuWidth) {
+		if (maxMenuWidth < 0) {
+			throw new IllegalArgumentException("maxMenuWidth must be >= 0");
+		}
+		this.maxMenuWidth = maxMenuWidth;
+		if (menuOverlayView != null) {
+			menuOverlayView.invalidateMenuFill();
+		}
+	}
+
+	/**
+	 * @return the maximum height in pixels of the menu, or 0 if it is only limited by the screen
+	 */
+	@SuppressWarnings("unused")
+	public int getMaxMenuHeight() {
+		return maxMenuHeight;
+	}
+
+	/**
+	 * Limit the height of the menu. A menu whose items don't fit scrolls, and only the items in view are drawn.
+	 * Menus are always limited to the usable screen area, less the menu margin. Radial menus are not limited.
+	 *
+	 * @param maxMenuHeight the maximum height in pixels of the menu, or 0 to only limit it to the screen
+	 */
+	public void setMaxMenuHeight(int maxMenuHeight) {
+		if (maxMenuHeight < 0) {
+			throw new IllegalArgumentException("maxMenuHeight must be >= 0");
+		}
+		this.maxMenuHeight = maxMenuHeight;
+		if (menuOverlayView != null) {
+			menuOverlayView.invalidateMenuFill();
+		}
+	}
+
+	/**
+	 * @return the response in milliseconds of the spring which opens and closes the menu
+	 */
+	@SuppressWarnings("unused")
+	public int getMenuAnimationDuration() {
+		return menuAnimationDuration;
+	}
+
+	/**
+	 * The menu is opened and closed by a spring, which carries its velocity across reversals, so closing a
+	 * menu which has only just started opening takes only as long as it has been opening.
+	 *
+	 * @param menuAnimationDuration the spring's response in milliseconds: the period it would oscillate with if undamped, roughly the time a full open or close takes
+	 */
+	public void setMenuAnimationDuration(int menuAnimationDuration) {
+		if (menuAnimationDuration <= 0) {
+			throw new IllegalArgumentException("menuAnimationDuration must be > 0");
+		}
+		this.menuAnimationDuration = menuAnimationDuration;
+	}
+
+	/**
+	 * @return the damping ratio of the spring which opens and closes the menu
+	 */
+	@SuppressWarnings("unused")
+	public float getMenuAnimationDampingRatio() {
+		return menuAnimationDampingRatio;
+	}
+
+	/**
+	 * @param menuAnimationDampingRatio the damping ratio of the spring which opens and closes the menu. 1 is critically damped,
+	 *                                  lower values arrive sooner, and the spring stops on reaching fully open or closed. Higher values approach slowly.
+	 */
+	public void setMenuAnimationDampingRatio(float menuAnimationDampingRatio) {
+		if (menuAnimationDampingRatio <= 0) {
+			throw new IllegalArgumentException("menuAnimationDampingRatio must be > 0");
+		}
+		this.menuAnimationDampingRatio = menuAnimationDampingRatio;
+	}
+
+	@SuppressWarnings("unused")
+	public float getButtonElevation() {
+		return buttonElevation;
+	}
+
+	/**
+	 * Set the button element's elevation in pixels
+	 *
+	 * @param buttonElevation the button element's elevation in pixels. Set to zero to disable elevation shadow.
+	 */
+	public void setButtonElevation(float buttonElevation) {
+		this.buttonElevation = buttonElevation;
+		buttonShadowBitmap = null; // invalidate
+		updateButtonElevation();
+	}
+
+	@SuppressWarnings("unused")
+	public float getMenuElevation() {
+		return menuElevation;
+	}
+
+	/**
+	 * Set the menu element's elevation in pixels
+	 *
+	 * @param menuElevation the menu element's elevation in pixels. Set to zero to disable elevation shadow.
+	 */
+	public void setMenuElevation(float menuElevation) {
+		this.menuElevation = menuElevation;
+		if (this.menuOverlayView != null) {
+			this.menuOverlayView.menuShadowNinePatch = null;
+			this.menuOverlayView.updateMenuElevation();
+		}
+	}
+
+	/**
+	 * @return the technique used to draw button and menu shadows, one of SHADOW_MODE_BITMAP or SHADOW_MODE_ELEVATION
+	 */
+	@SuppressWarnings("unused")
+	public int getShadowMode() {
+		return shadowMode;
+	}
+
+	/**
+	 * Set the technique used to draw button and menu shadows. SHADOW_MODE_BITMAP (the default) blends pre-rendered
+	 * shadow bitmaps, and works for custom button renderers which don't fill the button's circle.
+	 * SHADOW_MODE_ELEVATION casts native shadows from the button's circular outline and the menu's rounded rect,
+	 * which are computed on the render thread.
+	 *
+	 * @param shadowMode one of SHADOW_MODE_BITMAP or SHADOW_MODE_ELEVATION
+	 */
+	@SuppressWarnings("unused")
+	public void setShadowMode(int shadowMode) {
+		if (shadowMode != SHADOW_MODE_BITMAP && shadowMode != SHADOW_MODE_ELEVATION) {
+			throw new IllegalArgumentException("Unrecognized shadow mode " + shadowMode);
+		}
+
+		this.shadowMode = shadowMode;
+		updateButtonElevation();
+		if (menuOverlayView != null) {
+			menuOverlayView.updateMenuElevation();
+		}
+		invalidate();
+	}
+
+	void updateButtonElevation() {
+		if (shadowMode == SHADOW_MODE_ELEVATION) {
+			setOutlineProvider(buttonOutlineProvider);
+			setElevation(buttonElevation);
+		} else {
+			setOutlineProvider(ViewOutlineProvider.BACKGROUND);
+			setElevation(0);
+		}
+		buttonOutlineAlpha = -1;
+		invalidateOutline();
+	}
+
+	/**
+	 * Update the button's outline to follow its scale and opacity, if it casts a native shadow
+	 */
+	void updateButtonOutline() {
+		if (shadowMode == SHADOW_MODE_ELEVATION) {
+			float alpha = getButtonAlpha();
+			if (alpha != buttonOutlineAlpha) {
+				buttonOutlineAlpha = alpha;
+				invalidateOutline();
+			}
+		}
+	}
+
+	/**
+	 * @return get the currently selected menu item, or null if none is selected
+	 */
+	@SuppressWarnings("unused")
+	@Nullable
+	public MenuItem getSelectedMenuItem() {
+		return selectedMenuItem;
+	}
+
+	/**
+	 * @return the progress from 0 to 1 of the animated transition from the previously selected menu item to the current one
+	 */
+	@SuppressWarnings("unused")
+	public float getSelectionTransition() {
+		return selectionTransition;
+	}
+
+	/**
+	 * Set the current menu item selection. Triggers notification of SelectionListener, if one assigned
+	 *
+	 * @param selectedMenuItem MenuItem to make the current selection
+	 */
+	public void setSelectedMenuItem(@Nullable MenuItem selectedMenuItem) {
+		if (selectionListener != null && selectedMenuItem != null) {
+			selectionListener.onItemSelected(this, selectedMenuItem);
+		}
+
+		if (selectedMenuItem != this.selectedMenuItem) {
+			this.previouslySelectedMenuItem = this.selectedMenuItem;
+			this.selectedMenuItem = selectedMenuItem;
+
+			// the selected and previously selected items are drawn outside the menu display list
+			if (menuOverlayView != null) {
+				menuOverlayView.invalidateMenuPicture();
+			}
+
+			if (selectionAnimation == null) {
+				selectionAnimation = new Transition(ANIMATION_INTERPOLATOR, transitionListener);
+			}
+
+			selectionTransition = 0;
+			selectionAnimation.start(0, 1, ANIMATION_DURATION_MILLIS, 0);
+
+			invalidate();
+		}
+	}
+
+	/**
+	 * Set the current selection to the menu item at a given adapter position
+	 *
+	 * @param adapterPosition adapter position of menu item to make the current selection
+	 */
+	@SuppressWarnings("unused")
+	public void setSelectedMenuItemByAdapterPosition(int adapterPosition) {
+		setSelectedMenuItem(adapter.getItem(adapterPosition));
+	}
+
+	/**
+	 * Set the current selection to the menu item with a given ID
+	 *
+	 * @param menuItemId id of the menu item to make the current selection
+	 */
+	@SuppressWarnings("unused")
+	public void setSelectedMenuItemById(int menuItemId) {
+		MenuItem item = getMenuItemById(menuItemId);
+		if (item != null) {
+			setSelectedMenuItem(item);
+		}
+	}
+
+	/**
+	 * Find the menu item with a given ID. This is constant-time if the adapter is a BaseAdapter with stable ids.
+	 *
+	 * @param menuItemId id of the menu item to find
+	 * @return the menu item with this id, or null if the adapter has none
+	 */
+	@SuppressWarnings("unused")
+	@Nullable
+	public MenuItem getMenuItemById(int menuItemId) {
+		int position = getAdapterPositionForMenuItemId(menuItemId);
+		return position >= 0 ? adapter.getItem(position) : null;
+	}
+
+	/**
+	 * Find the adapter position of the menu item with a given ID. This is constant-time if the adapter is a BaseAdapter with stable ids.
+	 *
+	 * @param menuItemId id of the menu item to find
+	 * @return the adapter position of the menu item with this id, or -1 if the adapter has none
+	 */
+	@SuppressWarnings("unused")
+	public int getAdapterPositionForMenuItemId(int menuItemId) {
+		if (adapter == null) {
+			return -1;
+		}
+
+		if (adapter instanceof BaseAdapter && ((BaseAdapter) adapter).hasStableIds()) {
+			BaseAdapter baseAdapter = (BaseAdapter) adapter;
+			if (!itemIdIndexValid) {
+				itemIdIndex.rebuild(baseAdapter);
+				itemIdIndexValid = true;
+			}
+
+			int position = itemIdIndex.get(menuItemId);
+			if (position < 0) {
+				return -1;
+			}
+
+			if (position < baseAdapter.getCount() && baseAdapter.getItemId(position) == menuItemId) {
+				return position;
+			}
+
+			// the adapter changed without notifying, so fall back to a scan and re-index on the next lookup
+			invalidateItemIdIndex();
+		}
+
+		for (int i = 0, n = adapter.getCount(); i < n; i++) {
+			if (adapter.getItem(i).getId() == menuItemId) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Look the selected items up again by id after the adapter changed. An item the adapter rebuilt under the same
+	 * id replaces the stale one, and if the selected item is gone the selection is cleared without animating, as
+	 * setSelectedMenuItem(null) would, so the button doesn't go on showing a deleted item. Without stable ids a
+	 * removed item can't be told from a rebuilt one, so the selection is left alone.
+	 */
+	void resolveSelection() {
+		if (!(adapter instanceof BaseAdapter) || !((BaseAdapter) adapter).hasStableIds()) {
+			return;
+		}
+
+		if (previouslySelectedMenuItem != null && !isMenuItemIdInAdapter(previouslySelectedMenuItem.getId())) {
+			previouslySelectedMenuItem = null;
+		}
+
+		if (selectedMenuItem == null) {
+			return;
+		}
+
+		int position = getAdapterPositionForMenuItemId(selectedMenuItem.getId());
+		if (position >= 0) {
+			// an AsyncAdapter's loaded item is already indexed, so this doesn't start a load
+			MenuItem item = adapter.getItem(position);
+			if (item != selectedMenuItem) {
+				selectedMenuItem = item;
+				invalidate();
+			}
+		} else if (!isMenuItemIdInAdapter(selectedMenuItem.getId())) {
+			selectedMenuItem = null;
+			previouslySelectedMenuItem = null;
+			if (selectionAnimation != null) {
+				selectionAnimation.cancel();
+			}
+			selectionTransition = 1;
+			invalidate();
+		}
+	}
+
+	/**
+	 * @return false only if the adapter certainly has no item with this id. While an AsyncAdapter has items which
+	 * haven't loaded, and whose ids aren't known, any id may be among them.
 	 */
-	public void setMenuMargin(float menuMargin) {
-		this.menuMargin = menuMargin;
-		if (menuOverlayView != null) {
-			menuOverlayView.invalidateMenuFill();
-		}
-	}
-
-	@SuppressWarnings("unused")
-	public float getButtonElevation() {
-		return buttonElevation;
+	boolean isMenuItemIdInAdapter(int menuItemId) {
+		return getAdapterPositionForMenuItemId(menuItemId) >= 0
+				|| (adapter instanceof AsyncAdapter && getAdapterPositionForMenuItemId(PlaceholderMenuItem.ID) >= 0);
 	}
 
 	/**
-	 * Set the button element's elevation in pixels
-	 *
-	 * @param buttonElevation the button element's elevation in pixels. Set to zero to disable elevation shadow.
+	 * Mark the id index as stale, it is rebuilt on the next id lookup
 	 */
-	public void setButtonElevation(float buttonElevation) {
-		this.buttonElevation = buttonElevation;
-		buttonShadowBitmap = null; // invalidate
+	void invalidateItemIdIndex() {
+		itemIdIndexValid = false;
 	}
 
+	/**
+	 * @return the engine used to animate the menu's reveal, one of REVEAL_MODE_HARDWARE or REVEAL_MODE_CLIP_PATH
+	 */
 	@SuppressWarnings("unused")
-	public float getMenuElevation() {
-		return menuElevation;
+	public int getRevealMode() {
+		return revealMode;
 	}
 
 	/**
-	 * Set the menu element's elevation in pixels
+	 * Set the engine used to animate the menu's reveal. REVEAL_MODE_CLIP_PATH (the default) draws the menu
+	 * directly into the overlay, clipped by an oval path each frame. REVEAL_MODE_HARDWARE renders menu content
+	 * into a hardware layer and reveals it with an outline clip, which avoids per-frame path clipping.
+	 * Takes effect the next time the menu opens.
 	 *
-	 * @param menuElevation the menu element's elevation in pixels. Set to zero to disable elevation shadow.
+	 * @param revealMode one of REVEAL_MODE_HARDWARE or REVEAL_MODE_CLIP_PATH
 	 */
-	public void setMenuElevation(float menuElevation) {
-		this.menuElevation = menuElevation;
-		if (this.menuOverlayView != null) {
-			this.menuOverlayView.menuShadowBitmap = null;
+	@SuppressWarnings("unused")
+	public void setRevealMode(int revealMode) {
+		if (revealMode != REVEAL_MODE_CLIP_PATH && revealMode != REVEAL_MODE_HARDWARE) {
+			throw new IllegalArgumentException("Unrecognized reveal mode " + revealMode);
 		}
+		this.revealMode = revealMode;
 	}
 
 	/**
-	 * @return get the currently selected menu item, or null if none is selected
+	 * @return true if menu items are rasterized into a shared bitmap atlas instead of being drawn every frame
 	 */
 	@SuppressWarnings("unused")
-	@Nullable
-	public MenuItem getSelectedMenuItem() {
-		return selectedMenuItem;
+	public boolean isItemCacheEnabled() {
+		return itemCacheEnabled;
 	}
 
 	/**
-	 * Set the current menu item selection. Triggers notification of SelectionListener, if one assigned
+	 * When enabled, each MenuItem is rendered once per selection state into a shared bitmap atlas, and menu
+	 * animation frames blit from that atlas instead of calling MenuItem::onDraw. This is a good fit for menus
+	 * with many items that are expensive to draw. Items are clipped to their bounds when cached, and if a
+	 * MenuItem's appearance changes you must call invalidateMenuItems().
+	 * <p>
+	 * The atlas costs 4 bytes per pixel of the largest item, for each cell it holds. A menu which shows all
+	 * its items holds two cells per item, one for each selection state. A scrolling menu holds one cell per
+	 * item its viewport can show, and re-renders items as they scroll into view. The atlas never exceeds
+	 * 2048x2048 pixels, or 16MB. The items in view are rendered into it while the menu is prepared ahead of
+	 * opening, so it's uploaded to the GPU once rather than on each frame of the reveal.
 	 *
-	 * @param selectedMenuItem MenuItem to make the current selection
+	 * @param itemCacheEnabled if true, MenuItem renderings will be cached
 	 */
-	public void setSelectedMenuItem(@Nullable MenuItem selectedMenuItem) {
-		if (selectionListener != null && selectedMenuItem != null) {
-			selectionListener.onItemSelected(this, selectedMenuItem);
+	@SuppressWarnings("unused")
+	public void setItemCacheEnabled(boolean itemCacheEnabled) {
+		this.itemCacheEnabled = itemCacheEnabled;
+		if (menuOverlayView != null) {
+			if (itemCacheEnabled) {
+				menuOverlayView.invalidateMenuItemLayout();
+			} else {
+				// the display list may reference the atlas bitmap
+				menuOverlayView.invalidateMenuPicture();
+				menuOverlayView.itemAtlas.release();
+			}
 		}
+	}
 
-		if (selectedMenuItem != this.selectedMenuItem) {
-			this.previouslySelectedMenuItem = this.selectedMenuItem;
-			this.selectedMenuItem = selectedMenuItem;
-
-			selectionAnimator = ValueAnimator.ofFloat(0, 1);
-			selectionAnimator.setDuration(ANIMATION_DURATION_MILLIS);
-			selectionAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-			selectionAnimator.addUpdateListener(this);
-			selectionAnimator.start();
-
-			invalidate();
-		}
+	/**
+	 * @return true if the menu's background and items are recorded into a display list which is replayed each frame
+	 */
+	@SuppressWarnings("unused")
+	public boolean isMenuDisplayListEnabled() {
+		return menuDisplayListEnabled;
 	}
 
 	/**
-	 * Set the current selection to the menu item at a given adapter position
+	 * When enabled the menu background and unselected items are recorded once into a display list, and each frame
+	 * of the open animation replays that recording under the reveal clip. The recording is only redone when the
+	 * adapter notifies of changes, or when you call invalidateMenuItems(), so only enable this if your MenuItems
+	 * draw the same thing until then. Disabled by default, in which case items are drawn each frame.
 	 *
-	 * @param adapterPosition adapter position of menu item to make the current selection
+	 * @param menuDisplayListEnabled if true, menu content will be recorded into a display list
 	 */
 	@SuppressWarnings("unused")
-	public void setSelectedMenuItemByAdapterPosition(int adapterPosition) {
-		setSelectedMenuItem(adapter.getItem(adapterPosition));
+	public void setMenuDisplayListEnabled(boolean menuDisplayListEnabled) {
+		this.menuDisplayListEnabled = menuDisplayListEnabled;
+		if (menuOverlayView != null) {
+			menuOverlayView.invalidateMenuPicture();
+			menuOverlayView.invalidate();
+		}
 	}
 
 	/**
-	 * Set the current selection to the menu item with a given ID
-	 *
-	 * @param menuItemId id of the menu item to make the current selection
+	 * Notify the FlyoutMenuView that the appearance of its MenuItems has changed, discarding any
+	 * cached item renderings and display lists.
 	 */
 	@SuppressWarnings("unused")
-	public void setSelectedMenuItemById(int menuItemId) {
-		for (int i = 0, n = adapter.getCount(); i < n; i++) {
-			MenuItem item = adapter.getItem(i);
-			if (item.getId() == menuItemId) {
-				setSelectedMenuItem(item);
-				return;
-			}
+	public void invalidateMenuItems() {
+		if (menuOverlayView != null) {
+			menuOverlayView.invalidateItemCache();
+			menuOverlayView.invalidate();
 		}
 	}
 
@@ -1106,16 +2730,28 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 				buttonCenter.x + buttonRadius,
 				buttonCenter.y + buttonRadius);
 
+		buttonShadowBitmap = null; // depends on buttonRadius
+		invalidateOutline();
+
 		if (menuOverlayView != null) {
 			menuOverlayView.invalidateMenuFill();
 		}
 	}
 
+	Bitmap getButtonShadowBitmap() {
+		Bitmap shadowBitmap = ShadowBitmapCache.get(ShadowBitmapCache.KIND_BUTTON, buttonRadius, (int) buttonElevation);
+		if (shadowBitmap == null) {
+			shadowBitmap = createButtonShadowBitmap();
+			ShadowBitmapCache.put(ShadowBitmapCache.KIND_BUTTON, buttonRadius, (int) buttonElevation, shadowBitmap);
+		}
+		return shadowBitmap;
+	}
+
 	Bitmap createButtonShadowBitmap() {
 		int shadowRadius = (int) buttonElevation * 2;
 		int bitmapRadius = buttonRadius + (shadowRadius / 2);
 		int bitmapSize = bitmapRadius * 2;
-		Bitmap shadowBitmap = Bitmap.createBitmap(bitmapSize, bitmapSize, Bitmap.Config.ARGB_8888);
+		Bitmap shadowBitmap = Bitmap.createBitmap(bitmapSize, bitmapSize, Bitmap.Config.ALPHA_8);
 		shadowBitmap.eraseColor(0x0);
 
 		int colors[] = {
@@ -1138,24 +2774,102 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		return shadowBitmap;
 	}
 
+	/**
+	 * A plain GridLayout is laid out in bulk by its grid geometry. Its subclasses may place items elsewhere,
+	 * so they're only laid out in bulk if they implement BulkLayout themselves.
+	 *
+	 * @param layout a menu layout
+	 * @return something which can position the layout's items in bulk, otherwise null
+	 */
+	@Nullable
+	static BulkLayout asBulkLayout(Layout layout) {
+		if (layout instanceof BulkLayout) {
+			return (BulkLayout) layout;
+		} else if (layout != null && layout.getClass() == GridLayout.class) {
+			return ((GridLayout) layout).getGeometry();
+		}
+		return null;
+	}
+
+	/**
+	 * A plain GridLayout is hit tested by its grid geometry. Its subclasses may place items elsewhere, so
+	 * they're only hit tested directly if they implement InvertibleLayout themselves.
+	 *
+	 * @param layout a menu layout
+	 * @return something which can map points back to the layout's items directly, otherwise null
+	 */
+	@Nullable
+	static InvertibleLayout asInvertibleLayout(Layout layout) {
+		if (layout instanceof InvertibleLayout) {
+			return (InvertibleLayout) layout;
+		} else if (layout != null && layout.getClass() == GridLayout.class) {
+			return ((GridLayout) layout).getGeometry();
+		}
+		return null;
+	}
+
 	float dp2px(float dp) {
 		return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, getResources().getDisplayMetrics());
 	}
 
+	/**
+	 * FlyoutMenuView's transitions are no longer driven by ValueAnimators, so this does nothing. It's kept so
+	 * code which referred to FlyoutMenuView as an AnimatorUpdateListener still compiles.
+	 *
+	 * @deprecated menu and selection transitions are advanced by a Choreographer frame callback
+	 */
+	@Deprecated
 	@Override
 	public void onAnimationUpdate(ValueAnimator animation) {
-		if (animation == menuAnimator) {
-			menuOpenTransition = (float) animation.getAnimatedValue();
-		} else if (animation == selectionAnimator) {
-			selectionTransition = (float) animation.getAnimatedValue();
+	}
+
+	/**
+	 * Invalidate what changed after the FrameTicker advanced this view's transitions. Called at most
+	 * once per frame, however many of the transitions changed.
+	 *
+	 * @param menuChanged      true if menuOpenTransition changed
+	 * @param selectionChanged true if selectionTransition changed
+	 */
+	void onAnimationFrame(boolean menuChanged, boolean selectionChanged) {
+		boolean invalidateButton = false;
+
+		if (menuChanged) {
+			updateButtonOutline();
+			invalidateButton = true;
+
+			if (menuOverlayView != null) {
+				if (menuAnimation.getEndValue() == 0) {
+					// submenus close as soon as their menu starts closing
+					menuOverlayView.closeSubmenus(0);
+				}
+
+				// update the reveal clip and shadow outline ahead of the draw pass
+				menuOverlayView.prepareFrame();
+
+				menuOverlayView.invalidate();
+			}
 		}
-		invalidate();
-		if (menuOverlayView != null) {
-			menuOverlayView.invalidate();
+
+		if (selectionChanged) {
+			// the button only changes with the selection if its renderer draws it, and a detached menu isn't drawn
+			if (buttonRenderer != null && buttonRenderer.isSelectionDependent()) {
+				invalidateButton = true;
+			}
+			if (menuOverlayView != null && menuOverlayViewAttached) {
+				menuOverlayView.invalidateItems();
+			}
+		}
+
+		if (invalidateButton) {
+			invalidate();
 		}
 	}
 
 	void attachMenuOverlayView() {
+		// the view tree listeners miss moves made by transforms, such as a parent's translation animating,
+		// so the button's position is checked afresh each time the menu opens
+		updateWindowGeometry();
+
 		if (menuOverlayView == null) {
 			menuOverlayView = new MenuOverlayView(getContext(), this);
 		}
@@ -1168,6 +2882,13 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 			menuOverlayView.setTop(0);
 			menuOverlayView.setRight(rootView.getWidth());
 			menuOverlayView.setBottom(rootView.getHeight());
+
+			if (revealMode == REVEAL_MODE_HARDWARE) {
+				menuOverlayView.attachMenuRevealView(rootView);
+			}
+			menuOverlayView.updateMenuElevation();
+			menuOverlayView.resetMenuScroll();
+
 			menuOverlayViewAttached = true;
 		}
 	}
@@ -1175,6 +2896,9 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 	void detachMenuOverlayView() {
 		if (menuOverlayView != null && menuOverlayViewAttached) {
 			ViewGroup rootView = (ViewGroup) getRootView();
+			menuOverlayView.stopMenuScroll();
+			menuOverlayView.closeSubmenus(0);
+			menuOverlayView.detachMenuRevealView(rootView);
 			rootView.removeView(menuOverlayView);
 			menuOverlayViewAttached = false;
 		}
@@ -1298,103 +3022,519 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 				throw new IllegalArgumentException("Unrecognized FlyoutMenuView menuAnchor token \"" + attachmentSpec + "\"");
 		}
 
-		if (horizontal) {
-			setHorizontalMenuAnchor(anchor);
-			setHorizontalMenuAnchorOutside(outside);
-		} else {
-			setVerticalMenuAnchor(anchor);
-			setVerticalMenuAnchorOutside(outside);
+		if (horizontal) {
+			setHorizontalMenuAnchor(anchor);
+			setHorizontalMenuAnchorOutside(outside);
+		} else {
+			setVerticalMenuAnchor(anchor);
+			setVerticalMenuAnchorOutside(outside);
+		}
+	}
+
+	@SuppressLint("ViewConstructor")
+	static class MenuOverlayView extends View {
+
+		Paint paint;
+		FlyoutMenuView flyoutMenuView;
+		Rect flyoutMenuViewRect = new Rect();
+		PointF buttonCenter = new PointF();
+
+		NinePatch menuShadowNinePatch;
+		int menuShadowRadius;
+		int menuShadowInset;
+		Rect menuShadowRect = new Rect();
+		Shader menuCircleShadowShader;
+
+		Path menuOpenShapePath;
+		Path menuLocalShapePath = new Path();
+		Path menuFillOvalPath = new Path();
+		float menuBackgroundCornerRadius;
+		float menuShapeCornerRadius;
+		RectF menuOpenRect;
+		PointF menuFillButtonCenter = new PointF();
+		Size menuViewportSize = new Size();
+		RectF menuFillOval = new RectF();
+		int menuOpenRadius;
+
+		// menu items are laid out as parallel arrays indexed by adapter position. Frames are packed as
+		// left, top, right, bottom in the menu's coordinate space. Items are fetched from the adapter
+		// by getMenuItem when first drawn or touched, so an AsyncAdapter only loads the items shown.
+		int itemCount;
+		MenuItem[] items = new MenuItem[0];
+		float[] itemFrames = new float[0];
+		int[] itemSizes = new int[0];
+		Size itemMeasureSize = new Size();
+		boolean itemsNeedLayout = true;
+		RectF itemBounds = new RectF();
+		MenuItemSpatialIndex itemSpatialIndex = new MenuItemSpatialIndex();
+		boolean itemSpatialIndexValid;
+		MenuItemAtlas itemAtlas = new MenuItemAtlas();
+
+		// when the items don't fit in menuOpenRect the menu scrolls, and menuOpenRect is a viewport onto the
+		// content. Only the items in the viewport, listed in visibleItems, are drawn.
+		boolean menuScrollable;
+		int menuContentWidth;
+		int menuContentHeight;
+		int menuScrollX;
+		int menuScrollY;
+		int[] visibleItems = new int[0];
+		OverScroller menuScroller;
+		VelocityTracker menuVelocityTracker;
+		boolean menuDragScrolling;
+		boolean menuScrollPosted;
+		boolean scrollToSelectedItem;
+		float lastTouchX;
+		float lastTouchY;
+		float menuAutoScrollSpeed;
+		int menuAutoScrollDx;
+		int menuAutoScrollDy;
+		int touchSlop;
+		int minFlingVelocity;
+		int maxFlingVelocity;
+
+		// open submenus, the submenu at index i is at menu level i + 1, where level 0 is the root menu
+		ArrayList<Submenu> submenus = new ArrayList<>();
+		RectF submenuParentItemRect = new RectF();
+		int submenuDwellLevel = -1;
+		int submenuDwellPosition = -1;
+
+		Runnable submenuDwellRunnable = new Runnable() {
+			@Override
+			public void run() {
+				openSubmenu(submenuDwellLevel, submenuDwellPosition);
+			}
+		};
+
+		Runnable menuScrollRunnable = new Runnable() {
+			@Override
+			public void run() {
+				menuScrollPosted = false;
+				if (menuScroller.computeScrollOffset()) {
+					setMenuScroll(menuScroller.getCurrX(), menuScroller.getCurrY());
+					postMenuScroll();
+				} else if (menuAutoScrollDx != 0 || menuAutoScrollDy != 0) {
+					setMenuScroll(menuScrollX + menuAutoScrollDx, menuScrollY + menuAutoScrollDy);
+					postMenuScroll();
+				}
+			}
+		};
+
+		Rect menuClipBounds = new Rect();
+		Picture menuPicture = new Picture();
+		boolean menuPictureNeedsRecording = true;
+		boolean recordingMenuPicture;
+
+		MenuRevealView menuRevealView;
+
+		float menuOutlineAlpha = -1;
+		ViewOutlineProvider menuOutlineProvider = new ViewOutlineProvider() {
+			@Override
+			public void getOutline(View view, Outline outline) {
+				if (menuOpenRect == null || menuOutlineAlpha <= 0) {
+					outline.setEmpty();
+					return;
+				}
+
+				outline.setRoundRect(
+						(int) menuOpenRect.left,
+						(int) menuOpenRect.top,
+						(int) menuOpenRect.right,
+						(int) menuOpenRect.bottom,
+						menuShapeCornerRadius);
+				outline.setAlpha(menuOutlineAlpha);
+			}
+		};
+
+		public MenuOverlayView(Context context, FlyoutMenuView flyoutMenuView) {
+			super(context);
+
+			// workaround for lack of clip path in API < 18
+			if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+				setLayerType(LAYER_TYPE_SOFTWARE, null);
+			}
+
+			paint = new Paint();
+			paint.setAntiAlias(true);
+			this.flyoutMenuView = flyoutMenuView;
+
+			menuBackgroundCornerRadius = flyoutMenuView.dp2px(MENU_CORNER_RADIUS_DP);
+			setOutlineProvider(menuOutlineProvider);
+
+			ViewConfiguration viewConfiguration = ViewConfiguration.get(context);
+			touchSlop = viewConfiguration.getScaledTouchSlop();
+			minFlingVelocity = viewConfiguration.getScaledMinimumFlingVelocity();
+			maxFlingVelocity = viewConfiguration.getScaledMaximumFlingVelocity();
+			menuScroller = new OverScroller(context);
+			menuAutoScrollSpeed = flyoutMenuView.dp2px(MENU_AUTO_SCROLL_SPEED_DP);
+		}
+
+		@Override
+		protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+			super.onSizeChanged(w, h, oldw, oldh);
+
+			// the overlay is sized when first attached, which doesn't invalidate a menu prepared ahead of time
+			if (oldw != 0 || oldh != 0) {
+				invalidateMenuFill();
+			}
+		}
+
+		@Override
+		public boolean onTouchEvent(MotionEvent event) {
+			switch (event.getAction()) {
+				case MotionEvent.ACTION_DOWN:
+					if (flyoutMenuView.wasOpenedAsDialog) {
+						onMenuTouchDown(event);
+						return true;
+					}
+					break;
+
+				case MotionEvent.ACTION_MOVE:
+					if (flyoutMenuView.wasOpenedAsDialog) {
+						onMenuTouchMove(event);
+						return true;
+					}
+					break;
+
+				case MotionEvent.ACTION_UP:
+					if (flyoutMenuView.wasOpenedAsDialog) {
+						// a touch which scrolled the menu doesn't select or dismiss
+						if (!onMenuTouchUp(event)) {
+							MenuItem item = findMenuItemAtLocalPosition(event.getX(), event.getY());
+							if (item != null && item.hasSubmenu()) {
+								openSubmenuAtLocalPosition(event.getX(), event.getY());
+							} else {
+								flyoutMenuView.dismissMenuWithMenuItem(item);
+							}
+						}
+						return true;
+					}
+					break;
+
+				case MotionEvent.ACTION_CANCEL:
+					if (flyoutMenuView.wasOpenedAsDialog) {
+						onMenuTouchUp(null);
+						return true;
+					}
+					break;
+			}
+
+			return super.onTouchEvent(event);
+		}
+
+		void onMenuTouchDown(MotionEvent event) {
+			// a touch during a fling stops it, and is treated as a scroll rather than a tap
+			menuDragScrolling = !menuScroller.isFinished();
+			menuScroller.forceFinished(true);
+			lastTouchX = event.getX();
+			lastTouchY = event.getY();
+
+			if (menuScrollable && menuOpenRect.contains(lastTouchX, lastTouchY)) {
+				if (menuVelocityTracker == null) {
+					menuVelocityTracker = VelocityTracker.obtain();
+				}
+				menuVelocityTracker.addMovement(event);
+			}
+		}
+
+		void onMenuTouchMove(MotionEvent event) {
+			if (menuVelocityTracker == null) {
+				return;
+			}
+
+			menuVelocityTracker.addMovement(event);
+			float dx = lastTouchX - event.getX();
+			float dy = lastTouchY - event.getY();
+			if (!menuDragScrolling && dx * dx + dy * dy > touchSlop * touchSlop) {
+				menuDragScrolling = true;
+			}
+
+			if (menuDragScrolling) {
+				int scrollX = menuScrollX + (int) dx;
+				int scrollY = menuScrollY + (int) dy;
+
+				// the fractional part of the move is carried over to the next one
+				lastTouchX -= (int) dx;
+				lastTouchY -= (int) dy;
+				setMenuScroll(scrollX, scrollY);
+			}
+		}
+
+		/**
+		 * @param event the ACTION_UP event, or null if the touch was canceled
+		 * @return true if the touch scrolled the menu
+		 */
+		boolean onMenuTouchUp(@Nullable MotionEvent event) {
+			boolean scrolled = menuDragScrolling;
+			if (menuVelocityTracker != null) {
+				if (scrolled && event != null) {
+					menuVelocityTracker.addMovement(event);
+					menuVelocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+					int velocityX = (int) -menuVelocityTracker.getXVelocity();
+					int velocityY = (int) -menuVelocityTracker.getYVelocity();
+					if (Math.abs(velocityX) > minFlingVelocity || Math.abs(velocityY) > minFlingVelocity) {
+						menuScroller.fling(menuScrollX, menuScrollY, velocityX, velocityY, 0, getMaxMenuScrollX(), 0, getMaxMenuScrollY());
+						postMenuScroll();
+					}
+				}
+
+				menuVelocityTracker.recycle();
+				menuVelocityTracker = null;
+			}
+
+			menuDragScrolling = false;
+			return scrolled;
+		}
+
+		/**
+		 * While a drag which opened the menu rests near the menu's edge, scroll the menu toward that edge,
+		 * faster the closer the drag is to it
+		 *
+		 * @param x the x coordinate of the drag (in the coordinate system of the parent FlyoutMenuView)
+		 * @param y the y coordinate of the drag (in the coordinate system of the parent FlyoutMenuView)
+		 */
+		void updateMenuAutoScrollAtFlyoutMenuViewRelativePosition(float x, float y) {
+			menuAutoScrollDx = 0;
+			menuAutoScrollDy = 0;
+
+			x += flyoutMenuViewRect.left;
+			y += flyoutMenuViewRect.top;
+			if (menuScrollable && menuOpenRect.contains(x, y)) {
+				float edgeWidth = Math.min(flyoutMenuView.itemWidth, menuOpenRect.width() / 4);
+				float edgeHeight = Math.min(flyoutMenuView.itemHeight, menuOpenRect.height() / 4);
+				menuAutoScrollDx = getMenuAutoScrollSpeed(x - menuOpenRect.left, menuOpenRect.right - x, edgeWidth);
+				menuAutoScrollDy = getMenuAutoScrollSpeed(y - menuOpenRect.top, menuOpenRect.bottom - y, edgeHeight);
+			}
+
+			if (menuAutoScrollDx != 0 || menuAutoScrollDy != 0) {
+				postMenuScroll();
+			}
+		}
+
+		/**
+		 * @return the signed distance to scroll per frame along one axis, given the distances to the viewport's edges on that axis
+		 */
+		int getMenuAutoScrollSpeed(float distanceToStart, float distanceToEnd, float edgeSize) {
+			if (distanceToStart < edgeSize) {
+				return -(int) Math.ceil(menuAutoScrollSpeed * (1 - distanceToStart / edgeSize));
+			} else if (distanceToEnd < edgeSize) {
+				return (int) Math.ceil(menuAutoScrollSpeed * (1 - distanceToEnd / edgeSize));
+			}
+			return 0;
+		}
+
+		void stopMenuAutoScroll() {
+			menuAutoScrollDx = 0;
+			menuAutoScrollDy = 0;
+		}
+
+		/**
+		 * Stop any fling, drag or auto-scroll in progress
+		 */
+		void stopMenuScroll() {
+			stopMenuAutoScroll();
+			onMenuTouchUp(null);
+			menuScroller.forceFinished(true);
+			removeCallbacks(menuScrollRunnable);
+			menuScrollPosted = false;
+		}
+
+		/**
+		 * Called as the menu opens, to scroll the selected item into view once the menu is laid out
+		 */
+		void resetMenuScroll() {
+			stopMenuScroll();
+			scrollToSelectedItem = true;
 		}
-	}
 
-	@SuppressLint("ViewConstructor")
-	static class MenuOverlayView extends View {
+		void postMenuScroll() {
+			if (!menuScrollPosted) {
+				menuScrollPosted = true;
+				postOnAnimation(menuScrollRunnable);
+			}
+		}
 
-		Paint paint;
-		FlyoutMenuView flyoutMenuView;
-		Rect flyoutMenuViewRect = new Rect();
-		PointF buttonCenter = new PointF();
+		int getMaxMenuScrollX() {
+			return menuOpenRect != null ? Math.max(menuContentWidth - (int) menuOpenRect.width(), 0) : 0;
+		}
 
-		Bitmap menuShadowBitmap;
-		int menuShadowRadius;
-		int menuShadowInset;
-		Rect menuShadowSrcRect = new Rect();
-		Rect menuShadowDstRect = new Rect();
+		int getMaxMenuScrollY() {
+			return menuOpenRect != null ? Math.max(menuContentHeight - (int) menuOpenRect.height(), 0) : 0;
+		}
 
-		Path menuOpenShapePath;
-		Path menuFillOvalPath = new Path();
-		float menuBackgroundCornerRadius;
-		RectF menuOpenRect;
-		RectF menuFillOval = new RectF();
-		int menuOpenRadius;
+		/**
+		 * Scroll the menu's content, clamped to its scroll range, and redraw the viewport
+		 *
+		 * @param scrollX the offset in pixels of the viewport from the left of the content
+		 * @param scrollY the offset in pixels of the viewport from the top of the content
+		 */
+		void setMenuScroll(int scrollX, int scrollY) {
+			scrollX = Math.max(0, Math.min(scrollX, getMaxMenuScrollX()));
+			scrollY = Math.max(0, Math.min(scrollY, getMaxMenuScrollY()));
+			if (scrollX == menuScrollX && scrollY == menuScrollY) {
+				return;
+			}
 
-		ArrayList<MenuItemLayout> itemLayouts = new ArrayList<>();
+			menuScrollX = scrollX;
+			menuScrollY = scrollY;
 
-		public MenuOverlayView(Context context, FlyoutMenuView flyoutMenuView) {
-			super(context);
+			// submenus are anchored to items which have now moved
+			closeSubmenus(0);
 
-			// workaround for lack of clip path in API < 18
-			if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
-				setLayerType(LAYER_TYPE_SOFTWARE, null);
+			if (menuRevealView != null) {
+				menuRevealView.invalidate();
+			} else {
+				invalidate();
 			}
+		}
 
-			paint = new Paint();
-			paint.setAntiAlias(true);
-			this.flyoutMenuView = flyoutMenuView;
-
-			menuBackgroundCornerRadius = flyoutMenuView.dp2px(MENU_CORNER_RADIUS_DP);
+		/**
+		 * Scroll such that an item is centered in the viewport, as far as the scroll range allows
+		 *
+		 * @param position the adapter position of the item
+		 */
+		void scrollToMenuItem(int position) {
+			int f = position * 4;
+			float centerX = (itemFrames[f] + itemFrames[f + 2]) / 2;
+			float centerY = (itemFrames[f + 1] + itemFrames[f + 3]) / 2;
+			setMenuScroll((int) (centerX - menuOpenRect.width() / 2), (int) (centerY - menuOpenRect.height() / 2));
 		}
 
 		@Override
-		protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-			super.onSizeChanged(w, h, oldw, oldh);
-			invalidateMenuFill();
+		protected void onDraw(Canvas canvas) {
+			prepareFrame();
+
+			int blankerAlpha = Color.alpha(flyoutMenuView.getShieldColor());
+			if (flyoutMenuView.isShieldVisible() && blankerAlpha > 0) {
+				blankerAlpha = (int) (255f * ((blankerAlpha / 255f) * flyoutMenuView.menuOpenTransition));
+				paint.setColor(flyoutMenuView.getShieldColor());
+				paint.setAlpha(blankerAlpha);
+				canvas.drawRect(0, 0, getWidth(), getHeight(), paint);
+			}
+
+			// we draw the menu during a rescaled slice of the menuOpenTransition [pinion->1]
+			float alpha = getMenuRevealFraction();
+			if (alpha >= 0) {
+				drawMenu(canvas, alpha);
+				for (int i = 0, n = submenus.size(); i < n; i++) {
+					drawSubmenu(canvas, submenus.get(i));
+				}
+			}
 		}
 
-		@Override
-		public boolean onTouchEvent(MotionEvent event) {
-			switch (event.getAction()) {
-				case MotionEvent.ACTION_DOWN:
-					if (flyoutMenuView.wasOpenedAsDialog) {
-						return true;
+		/**
+		 * Bring the menu geometry up to date for the current frame. This is cheap to call every frame
+		 * since it only does work if it was invalidated previously.
+		 */
+		void prepareFrame() {
+			prepareMenuGeometry();
+
+			if (scrollToSelectedItem && menuOpenRect != null) {
+				scrollToSelectedItem = false;
+				if (menuScrollable && flyoutMenuView.selectedMenuItem != null) {
+					int position = findMenuItemPosition(flyoutMenuView.selectedMenuItem);
+					if (position >= 0) {
+						scrollToMenuItem(position);
 					}
-					break;
+				}
+			}
 
-				case MotionEvent.ACTION_UP:
-					if (flyoutMenuView.wasOpenedAsDialog) {
-						flyoutMenuView.dismissMenuWithMenuItem(findMenuItemAtLocalPosition(event.getX(), event.getY()));
-						return true;
-					}
-					break;
+			if (menuRevealView != null) {
+				updateMenuRevealView(getMenuRevealFraction());
 			}
 
-			return super.onTouchEvent(event);
+			if (flyoutMenuView.shadowMode == SHADOW_MODE_ELEVATION) {
+				updateMenuOutline(getMenuRevealFraction());
+			}
 		}
 
-		@Override
-		protected void onDraw(Canvas canvas) {
-			// get rect for parent
-			flyoutMenuView.getGlobalVisibleRect(flyoutMenuViewRect);
+		/**
+		 * Compute everything the menu needs to be drawn ahead of time, while the menu is closed, so that
+		 * opening it only draws
+		 */
+		void prepareMenu() {
+			prepareMenuGeometry();
+
+			if (menuOpenRect != null && flyoutMenuView.itemCacheEnabled) {
+				prefillItemAtlas();
+			}
+
+			if (menuOpenRect != null && flyoutMenuView.menuElevation > 0 && flyoutMenuView.shadowMode == SHADOW_MODE_BITMAP && !isMenuCircular()) {
+				getMenuShadowNinePatch();
+			}
+		}
+
+		/**
+		 * Bring the item layouts, the menu rect, its clip path and reveal radius up to date. These are only
+		 * recomputed if they were invalidated, if the button has moved the menu is just moved along with it.
+		 */
+		void prepareMenuGeometry() {
+			// the button's bounds in this view's coordinate space, which is that of the window
+			flyoutMenuViewRect.set(flyoutMenuView.getWindowRect());
 			buttonCenter.x = flyoutMenuViewRect.exactCenterX();
 			buttonCenter.y = flyoutMenuViewRect.exactCenterY();
 
-			// this is cheap to call every frame since it only does work if it was invalidated previously
-			computeMenuFill();
+			if (menuOpenRect != null && (buttonCenter.x != menuFillButtonCenter.x || buttonCenter.y != menuFillButtonCenter.y)) {
+				if (flyoutMenuView.menuOverlayViewAttached) {
+					// follow the button while the menu is open, say as the list it's in scrolls, by moving the
+					// menu rather than positioning it anew
+					offsetMenuFill(buttonCenter.x - menuFillButtonCenter.x, buttonCenter.y - menuFillButtonCenter.y);
+				} else {
+					// a closed menu is positioned anew, so it's anchored and kept on screen for where the button is now
+					invalidateMenuFill();
+				}
+			}
+
+			// the menu's size depends on its items' layout, so lay them out first
 			layoutMenuItems();
+			computeMenuFill();
+		}
 
-			int blankerAlpha = Color.alpha(flyoutMenuView.getShieldColor());
-			if (flyoutMenuView.isShieldVisible() && blankerAlpha > 0) {
-				blankerAlpha = (int) (255f * ((blankerAlpha / 255f) * flyoutMenuView.menuOpenTransition));
-				paint.setColor(flyoutMenuView.getShieldColor());
-				paint.setAlpha(blankerAlpha);
-				canvas.drawRect(0, 0, getWidth(), getHeight(), paint);
+		/**
+		 * Apply the menu elevation to this view when shadows are cast natively. The MenuRevealView
+		 * is raised to the same elevation so it continues to draw above this view.
+		 */
+		void updateMenuElevation() {
+			float elevation = flyoutMenuView.shadowMode == SHADOW_MODE_ELEVATION ? flyoutMenuView.menuElevation : 0;
+			setElevation(elevation);
+			if (menuRevealView != null) {
+				menuRevealView.setElevation(elevation);
 			}
+			menuOutlineAlpha = -1;
+			invalidateOutline();
+		}
 
-			// we draw the menu during a rescaled slice of the menuOpenTransition [pinion->1]
+		/**
+		 * Fade the natively cast menu shadow in over the second half of the reveal, matching the bitmap shadow
+		 *
+		 * @param alpha the reveal progress as returned by getMenuRevealFraction
+		 */
+		void updateMenuOutline(float alpha) {
+			final float pinion = 0.5f;
+			float shadowAlpha = 0;
+			if (alpha > pinion) {
+				shadowAlpha = (alpha - pinion) / (1f - pinion);
+				shadowAlpha *= shadowAlpha;
+			}
+
+			if (shadowAlpha != menuOutlineAlpha) {
+				menuOutlineAlpha = shadowAlpha;
+				invalidateOutline();
+			}
+		}
+
+		/**
+		 * @return the progress of the menu's reveal from 0 to 1, or -1 if the menu is not yet visible
+		 */
+		float getMenuRevealFraction() {
 			final float pinion = 0.15f;
 			if (flyoutMenuView.menuOpenTransition >= pinion) {
-				drawMenu(canvas, (flyoutMenuView.menuOpenTransition - pinion) / (1f - pinion));
+				return (flyoutMenuView.menuOpenTransition - pinion) / (1f - pinion);
 			}
+			return -1;
+		}
+
+		float getMenuRevealRadius(float alpha) {
+			return (float) flyoutMenuView.buttonRadius + (alpha * (float) (menuOpenRadius - flyoutMenuView.buttonRadius));
 		}
 
 		void drawMenu(Canvas canvas, float alpha) {
@@ -1404,13 +3544,19 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 			float pinion = 0.5f;
 
-			if (flyoutMenuView.menuElevation > 0 && alpha > pinion) {
-				if (menuShadowBitmap == null) {
-					menuShadowBitmap = createMenuShadowBitmap();
-				}
+			if (flyoutMenuView.menuElevation > 0 && flyoutMenuView.shadowMode == SHADOW_MODE_BITMAP && alpha > pinion) {
 				float shadowAlpha = (alpha - pinion) / (1f - pinion);
 				int menuShadowOffset = (int) (flyoutMenuView.menuElevation / 2);
-				drawMenuShadow(canvas, paint, menuOpenRect, menuShadowBitmap, menuShadowRadius, menuShadowInset, 0, menuShadowOffset, shadowAlpha * shadowAlpha);
+				if (isMenuCircular()) {
+					drawMenuCircleShadow(canvas, menuShadowOffset, shadowAlpha * shadowAlpha);
+				} else {
+					drawMenuShadow(canvas, paint, menuOpenRect, getMenuShadowNinePatch(), menuShadowRadius, menuShadowInset, 0, menuShadowOffset, shadowAlpha * shadowAlpha);
+				}
+			}
+
+			if (menuRevealView != null) {
+				// menu content is drawn and revealed by the MenuRevealView
+				return;
 			}
 
 			// set clip to the menu shape
@@ -1418,7 +3564,7 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 			canvas.clipPath(menuOpenShapePath);
 
 			// add oval clip for reveal animation
-			float radius = (float) flyoutMenuView.buttonRadius + (alpha * (float) (menuOpenRadius - flyoutMenuView.buttonRadius));
+			float radius = getMenuRevealRadius(alpha);
 			menuFillOval.left = buttonCenter.x - radius;
 			menuFillOval.top = buttonCenter.y - radius;
 			menuFillOval.right = buttonCenter.x + radius;
@@ -1428,170 +3574,381 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 			menuFillOvalPath.addOval(menuFillOval, Path.Direction.CW);
 			canvas.clipPath(menuFillOvalPath);
 
-			// fill menu background
+			// menu content is drawn in the menu's coordinate space, where the origin is the top left of menuOpenRect
+			canvas.translate(menuOpenRect.left, menuOpenRect.top);
+			drawMenuContent(canvas, radius);
+
+			canvas.restore();
+		}
+
+		/**
+		 * Draw the menu background and items in the menu's coordinate space
+		 *
+		 * @param canvas       the canvas to draw into
+		 * @param revealRadius the radius of the reveal circle around the button center, items outside it are skipped. Pass a negative value to disable
+		 */
+		void drawMenuContent(Canvas canvas, float revealRadius) {
+			itemAtlas.beginFrame();
+
+			if (menuScrollable) {
+				// items are drawn in the content's coordinate space, offset by the scroll position
+				drawMenuBackground(canvas);
+				canvas.save();
+				canvas.translate(-menuScrollX, -menuScrollY);
+				drawMenuItems(canvas, true, true, revealRadius);
+				canvas.restore();
+			} else if (canDrawMenuPicture(canvas)) {
+				// the background and unselected items are replayed from a display list, only the
+				// selection-dependent items are drawn per frame
+				if (menuPictureNeedsRecording) {
+					recordMenuPicture();
+				}
+				canvas.drawPicture(menuPicture);
+				drawMenuItems(canvas, false, true, revealRadius);
+			} else {
+				drawMenuBackground(canvas);
+				drawMenuItems(canvas, true, true, revealRadius);
+			}
+		}
+
+		void attachMenuRevealView(ViewGroup rootView) {
+			if (menuRevealView == null) {
+				menuRevealView = new MenuRevealView(getContext(), this);
+			}
+
+			rootView.addView(menuRevealView, new ViewGroup.LayoutParams(0, 0));
+			menuRevealView.setVisibility(INVISIBLE);
+			menuRevealView.setElevation(getElevation());
+		}
+
+		void detachMenuRevealView(ViewGroup rootView) {
+			if (menuRevealView != null) {
+				rootView.removeView(menuRevealView);
+				menuRevealView = null;
+			}
+		}
+
+		/**
+		 * Position and size the MenuRevealView to cover the menu, and update its reveal clip
+		 *
+		 * @param alpha the reveal progress as returned by getMenuRevealFraction
+		 */
+		void updateMenuRevealView(float alpha) {
+			if (menuOpenRect == null || alpha < 0) {
+				menuRevealView.setVisibility(INVISIBLE);
+				return;
+			}
+
+			int width = (int) Math.ceil(menuOpenRect.width());
+			int height = (int) Math.ceil(menuOpenRect.height());
+			ViewGroup.LayoutParams layoutParams = menuRevealView.getLayoutParams();
+			if (layoutParams.width != width || layoutParams.height != height) {
+				layoutParams.width = width;
+				layoutParams.height = height;
+				menuRevealView.setLayoutParams(layoutParams);
+				menuRevealView.layout(0, 0, width, height);
+				menuRevealView.invalidate();
+			}
+
+			menuRevealView.setTranslationX(menuOpenRect.left);
+			menuRevealView.setTranslationY(menuOpenRect.top);
+			menuRevealView.setRevealCircle(buttonCenter.x - menuOpenRect.left, buttonCenter.y - menuOpenRect.top, getMenuRevealRadius(alpha));
+			menuRevealView.setVisibility(VISIBLE);
+		}
+
+		/**
+		 * Redraw the menu's items, which are drawn by the MenuRevealView when there is one. The whole view is
+		 * invalidated, since hardware accelerated views ignore dirty rects and redraw everything regardless.
+		 */
+		void invalidateItems() {
+			if (menuOpenRect == null) {
+				return;
+			}
+
+			if (menuRevealView != null) {
+				menuRevealView.invalidate();
+			} else {
+				invalidate();
+			}
+		}
+
+		/**
+		 * Notify that menu content has changed; this is only needed when the menu content is
+		 * drawn by a MenuRevealView, since it is cached in a hardware layer
+		 */
+		void invalidateMenuContent() {
+			if (menuRevealView != null) {
+				menuRevealView.invalidate();
+			}
+		}
+
+		boolean canDrawMenuPicture(Canvas canvas) {
+			// hardware accelerated canvases only support drawPicture from API 23. Scrolling menus don't use
+			// a display list, since it would hold every item rather than just those in view.
+			return flyoutMenuView.menuDisplayListEnabled && !menuScrollable &&
+					(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M || !canvas.isHardwareAccelerated());
+		}
+
+		void recordMenuPicture() {
+			Canvas pictureCanvas = menuPicture.beginRecording((int) Math.ceil(menuOpenRect.width()), (int) Math.ceil(menuOpenRect.height()));
+			drawMenuBackground(pictureCanvas);
+			recordingMenuPicture = true;
+			drawMenuItems(pictureCanvas, true, false, -1);
+			recordingMenuPicture = false;
+			menuPicture.endRecording();
+			menuPictureNeedsRecording = false;
+		}
+
+		void invalidateMenuPicture() {
+			menuPictureNeedsRecording = true;
+			invalidateMenuContent();
+		}
+
+		void drawMenuBackground(Canvas canvas) {
 			paint.setAlpha(255);
 			paint.setColor(flyoutMenuView.menuBackgroundColor);
-			canvas.drawRect(menuOpenRect, paint);
+			canvas.drawRect(0, 0, menuOpenRect.width(), menuOpenRect.height(), paint);
+		}
 
+		/**
+		 * Draw menu items in the menu's coordinate space
+		 *
+		 * @param canvas             the canvas to draw into
+		 * @param drawRestingItems   if true, draw items which are neither selected nor previously selected
+		 * @param drawSelectionItems if true, draw the selected and previously selected items, and the selection highlight
+		 * @param revealRadius       the radius of the reveal circle around the button center, items outside it are skipped. Pass a negative value to disable
+		 */
+		void drawMenuItems(Canvas canvas, boolean drawRestingItems, boolean drawSelectionItems, float revealRadius) {
 			float selectedItemBackgroundColorAlpha = (float) Color.alpha(flyoutMenuView.selectedItemBackgroundColor) / 255f;
 
-			// draw menu items - note: clip path is still active
-			for (MenuItemLayout menuItemLayout : itemLayouts) {
+			// items which are outside the clip, or the reveal circle, are skipped
+			canvas.getClipBounds(menuClipBounds);
+			float revealCenterX = buttonCenter.x - menuOpenRect.left + menuScrollX;
+			float revealCenterY = buttonCenter.y - menuOpenRect.top + menuScrollY;
+			float revealRadiusSquared = revealRadius * revealRadius;
+			float cullOutset = flyoutMenuView.itemMargin / 2;
+
+			// a scrolling menu only visits the items in its viewport, rather than testing every item
+			int count = itemCount;
+			int[] positions = null;
+			if (menuScrollable) {
+				count = getItemSpatialIndex().query(itemFrames,
+						menuScrollX - cullOutset,
+						menuScrollY - cullOutset,
+						menuScrollX + menuOpenRect.width() + cullOutset,
+						menuScrollY + menuOpenRect.height() + cullOutset,
+						visibleItems);
+				positions = visibleItems;
+			}
+
+			for (int n = 0; n < count; n++) {
+				int i = positions != null ? positions[n] : n;
+
+				// outset by the selection highlight, which extends past the item's frame
+				int f = i * 4;
+				float left = itemFrames[f] - cullOutset;
+				float top = itemFrames[f + 1] - cullOutset;
+				float right = itemFrames[f + 2] + cullOutset;
+				float bottom = itemFrames[f + 3] + cullOutset;
+
+				if (right < menuClipBounds.left || left > menuClipBounds.right || bottom < menuClipBounds.top || top > menuClipBounds.bottom) {
+					continue;
+				}
+
+				if (revealRadius >= 0) {
+					// distance from the reveal center to the nearest point of the item
+					float dx = revealCenterX - Math.max(left, Math.min(revealCenterX, right));
+					float dy = revealCenterY - Math.max(top, Math.min(revealCenterY, bottom));
+					if (dx * dx + dy * dy > revealRadiusSquared) {
+						continue;
+					}
+				}
+
+				// only items which pass culling are fetched from the adapter
+				MenuItem item = getMenuItem(i);
+				boolean isSelectionItem = item == flyoutMenuView.previouslySelectedMenuItem || item == flyoutMenuView.selectedMenuItem;
+				if (isSelectionItem ? !drawSelectionItems : !drawRestingItems) {
+					continue;
+				}
+
 				canvas.save();
-				canvas.translate(menuOpenRect.left + menuItemLayout.frame.left, menuOpenRect.top + menuItemLayout.frame.top);
+				canvas.translate(itemFrames[f], itemFrames[f + 1]);
+				itemBounds.set(0, 0, itemFrames[f + 2] - itemFrames[f], itemFrames[f + 3] - itemFrames[f + 1]);
 
-				if (menuItemLayout.item == flyoutMenuView.previouslySelectedMenuItem) {
+				if (item == flyoutMenuView.previouslySelectedMenuItem) {
 					int itemSelectionAlpha = (int) (selectedItemBackgroundColorAlpha * (1f - flyoutMenuView.selectionTransition) * 255);
 					paint.setColor(ColorUtils.setAlphaComponent(flyoutMenuView.selectedItemBackgroundColor, itemSelectionAlpha));
 
-					flyoutMenuView.selectedMenuItemBounds.left = menuItemLayout.bounds.left - flyoutMenuView.itemMargin / 2;
-					flyoutMenuView.selectedMenuItemBounds.top = menuItemLayout.bounds.top - flyoutMenuView.itemMargin / 2;
-					flyoutMenuView.selectedMenuItemBounds.right = menuItemLayout.bounds.right + flyoutMenuView.itemMargin / 2;
-					flyoutMenuView.selectedMenuItemBounds.bottom = menuItemLayout.bounds.bottom + flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.left = itemBounds.left - flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.top = itemBounds.top - flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.right = itemBounds.right + flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.bottom = itemBounds.bottom + flyoutMenuView.itemMargin / 2;
 
-					menuItemLayout.item.onDraw(canvas, menuItemLayout.bounds, 1f - flyoutMenuView.selectionTransition);
-				} else if (menuItemLayout.item == flyoutMenuView.selectedMenuItem) {
+					drawMenuItem(canvas, i, 1f - flyoutMenuView.selectionTransition);
+				} else if (item == flyoutMenuView.selectedMenuItem) {
 					int itemSelectionAlpha = (int) (selectedItemBackgroundColorAlpha * flyoutMenuView.selectionTransition * 255);
 					paint.setColor(ColorUtils.setAlphaComponent(flyoutMenuView.selectedItemBackgroundColor, itemSelectionAlpha));
 
-					flyoutMenuView.selectedMenuItemBounds.left = menuItemLayout.bounds.left - flyoutMenuView.itemMargin / 2;
-					flyoutMenuView.selectedMenuItemBounds.top = menuItemLayout.bounds.top - flyoutMenuView.itemMargin / 2;
-					flyoutMenuView.selectedMenuItemBounds.right = menuItemLayout.bounds.right + flyoutMenuView.itemMargin / 2;
-					flyoutMenuView.selectedMenuItemBounds.bottom = menuItemLayout.bounds.bottom + flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.left = itemBounds.left - flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.top = itemBounds.top - flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.right = itemBounds.right + flyoutMenuView.itemMargin / 2;
+					flyoutMenuView.selectedMenuItemBounds.bottom = itemBounds.bottom + flyoutMenuView.itemMargin / 2;
 
 					canvas.drawRoundRect(flyoutMenuView.selectedMenuItemBounds, menuBackgroundCornerRadius, menuBackgroundCornerRadius, paint);
 
-					menuItemLayout.item.onDraw(canvas, menuItemLayout.bounds, flyoutMenuView.selectionTransition);
+					drawMenuItem(canvas, i, flyoutMenuView.selectionTransition);
 				} else {
-					menuItemLayout.item.onDraw(canvas, menuItemLayout.bounds, 0);
+					drawMenuItem(canvas, i, 0);
 				}
 
 				canvas.restore();
 			}
+		}
 
-			canvas.restore();
+		/**
+		 * Draw a single menu item into a canvas translated to the item's origin, where itemBounds holds its bounds
+		 */
+		void drawMenuItem(Canvas canvas, int position, float degreeSelected) {
+			// the atlas only holds the resting selection states, items mid-transition are drawn directly. Nor
+			// is it used while recording the menu picture, which would otherwise replay atlas slots that have
+			// since been recycled for other items.
+			MenuItem item = getMenuItem(position);
+			if (flyoutMenuView.itemCacheEnabled && !recordingMenuPicture && (degreeSelected == 0 || degreeSelected == 1)) {
+				if (itemAtlas.draw(canvas, item, position, itemBounds, degreeSelected == 1)) {
+					return;
+				}
+			}
+
+			item.onDraw(canvas, itemBounds, degreeSelected);
 		}
 
 
-		void drawMenuShadow(Canvas canvas, Paint paint, RectF rect, Bitmap shadowBitmap, int shadowRadius, int inset, int xOffset, int yOffset, float alpha) {
-			canvas.save();
+		void drawMenuShadow(Canvas canvas, Paint paint, RectF rect, NinePatch shadowNinePatch, int shadowRadius, int inset, int xOffset, int yOffset, float alpha) {
+			// the shadow bitmap is an alpha mask, tinted by the paint color
+			paint.setColor(SHADOW_COLOR);
+			paint.setAlpha((int) (alpha * 255));
+
+			menuShadowRect.left = (int) rect.left - shadowRadius + inset + xOffset;
+			menuShadowRect.top = (int) rect.top - shadowRadius + inset + yOffset;
+			menuShadowRect.right = (int) rect.right + shadowRadius - inset + xOffset;
+			menuShadowRect.bottom = (int) rect.bottom + shadowRadius - inset + yOffset;
+			shadowNinePatch.draw(canvas, menuShadowRect, paint);
+
+			paint.setAlpha(255);
+		}
+
+		/**
+		 * Draw the shadow of a circular menu, as a gradient matching the button's shadow bitmap. A bitmap
+		 * the size of the menu would be too large to cache.
+		 */
+		void drawMenuCircleShadow(Canvas canvas, int yOffset, float alpha) {
+			float menuRadius = menuOpenRect.width() / 2;
+			float shadowRadius = flyoutMenuView.menuElevation * 2;
+			if (menuCircleShadowShader == null) {
+				float gradientRadius = menuRadius + shadowRadius / 2;
+				int colors[] = {
+						ColorUtils.setAlphaComponent(SHADOW_COLOR, SHADOW_ALPHA),
+						ColorUtils.setAlphaComponent(SHADOW_COLOR, 0)
+				};
+				float stops[] = {
+						(menuRadius - shadowRadius / 2) / gradientRadius,
+						1f
+				};
+				menuCircleShadowShader = new RadialGradient(0, 0, gradientRadius, colors, stops, Shader.TileMode.CLAMP);
+			}
+
+			paint.setColor(SHADOW_COLOR);
 			paint.setAlpha((int) (alpha * 255));
+			paint.setShader(menuCircleShadowShader);
 
-			int left = (int) rect.left - shadowRadius + inset + xOffset;
-			int top = (int) rect.top - shadowRadius + inset + yOffset;
-			int right = (int) rect.right + shadowRadius - inset + xOffset;
-			int bottom = (int) rect.bottom + shadowRadius - inset + yOffset;
-
-			// top left corner
-			menuShadowSrcRect.left = 0;
-			menuShadowSrcRect.top = 0;
-			menuShadowSrcRect.right = shadowRadius;
-			menuShadowSrcRect.bottom = shadowRadius;
-			menuShadowDstRect.left = left;
-			menuShadowDstRect.top = top;
-			menuShadowDstRect.right = left + shadowRadius;
-			menuShadowDstRect.bottom = top + shadowRadius;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// top right corner
-			menuShadowSrcRect.left = shadowBitmap.getWidth() - shadowRadius;
-			menuShadowSrcRect.top = 0;
-			menuShadowSrcRect.right = shadowBitmap.getWidth();
-			menuShadowSrcRect.bottom = shadowRadius;
-			menuShadowDstRect.left = right - shadowRadius;
-			menuShadowDstRect.top = top;
-			menuShadowDstRect.right = right;
-			menuShadowDstRect.bottom = top + shadowRadius;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// bottom right corner
-			menuShadowSrcRect.left = shadowBitmap.getWidth() - shadowRadius;
-			menuShadowSrcRect.top = shadowBitmap.getHeight() - shadowRadius;
-			menuShadowSrcRect.right = shadowBitmap.getWidth();
-			menuShadowSrcRect.bottom = shadowBitmap.getHeight();
-			menuShadowDstRect.left = right - shadowRadius;
-			menuShadowDstRect.top = bottom - shadowRadius;
-			menuShadowDstRect.right = right;
-			menuShadowDstRect.bottom = bottom;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// bottom left corner
-			menuShadowSrcRect.left = 0;
-			menuShadowSrcRect.top = shadowBitmap.getHeight() - shadowRadius;
-			menuShadowSrcRect.right = shadowRadius;
-			menuShadowSrcRect.bottom = shadowBitmap.getHeight();
-			menuShadowDstRect.left = left;
-			menuShadowDstRect.top = bottom - shadowRadius;
-			menuShadowDstRect.right = left + shadowRadius;
-			menuShadowDstRect.bottom = bottom;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// draw the top edge
-			menuShadowSrcRect.left = shadowRadius;
-			menuShadowSrcRect.top = 0;
-			menuShadowSrcRect.right = shadowBitmap.getWidth() - shadowRadius;
-			menuShadowSrcRect.bottom = shadowRadius;
-			menuShadowDstRect.left = left + shadowRadius;
-			menuShadowDstRect.top = top;
-			menuShadowDstRect.right = right - shadowRadius;
-			menuShadowDstRect.bottom = top + shadowRadius;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// draw the right edge
-			menuShadowSrcRect.left = shadowBitmap.getWidth() - shadowRadius;
-			menuShadowSrcRect.top = shadowRadius;
-			menuShadowSrcRect.right = shadowBitmap.getWidth();
-			menuShadowSrcRect.bottom = shadowBitmap.getHeight() - shadowRadius;
-			menuShadowDstRect.left = right - shadowRadius;
-			menuShadowDstRect.top = top + shadowRadius;
-			menuShadowDstRect.right = right;
-			menuShadowDstRect.bottom = bottom - shadowRadius;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// draw the bottom edge
-			menuShadowSrcRect.left = shadowRadius;
-			menuShadowSrcRect.top = shadowBitmap.getHeight() - shadowRadius;
-			menuShadowSrcRect.right = shadowBitmap.getWidth() - shadowRadius;
-			menuShadowSrcRect.bottom = shadowBitmap.getHeight();
-			menuShadowDstRect.left = left + shadowRadius;
-			menuShadowDstRect.top = bottom - shadowRadius;
-			menuShadowDstRect.right = right - shadowRadius;
-			menuShadowDstRect.bottom = bottom;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// draw center
-			menuShadowSrcRect.left = shadowRadius;
-			menuShadowSrcRect.top = shadowRadius;
-			menuShadowSrcRect.right = shadowBitmap.getWidth() - shadowRadius;
-			menuShadowSrcRect.bottom = shadowBitmap.getHeight() - shadowRadius;
-			menuShadowDstRect.left = left + shadowRadius;
-			menuShadowDstRect.top = top + shadowRadius;
-			menuShadowDstRect.right = right - shadowRadius;
-			menuShadowDstRect.bottom = bottom - shadowRadius;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-			// draw the left edge
-			menuShadowSrcRect.left = 0;
-			menuShadowSrcRect.top = shadowRadius;
-			menuShadowSrcRect.right = shadowRadius;
-			menuShadowSrcRect.bottom = shadowBitmap.getHeight() - shadowRadius;
-			menuShadowDstRect.left = left;
-			menuShadowDstRect.top = top + shadowRadius;
-			menuShadowDstRect.right = left + shadowRadius;
-			menuShadowDstRect.bottom = bottom - shadowRadius;
-			canvas.drawBitmap(shadowBitmap, menuShadowSrcRect, menuShadowDstRect, paint);
-
-
-			// restore drawing state
+			// the shader is centered on the origin, so it can be reused as the menu moves
+			canvas.save();
+			canvas.translate(menuOpenRect.centerX(), menuOpenRect.centerY() + yOffset);
+			canvas.drawCircle(0, 0, menuRadius + shadowRadius / 2, paint);
 			canvas.restore();
+
+			paint.setShader(null);
 			paint.setAlpha(255);
 		}
 
-		Bitmap createMenuShadowBitmap() {
+		/**
+		 * @return true if the menu is a circle centered on the button, rather than a rounded rect
+		 */
+		boolean isMenuCircular() {
+			return flyoutMenuView.layout instanceof RadialLayout;
+		}
+
+		NinePatch getMenuShadowNinePatch() {
+			if (menuShadowNinePatch == null) {
+				menuShadowNinePatch = createMenuShadowNinePatch();
+			}
+			return menuShadowNinePatch;
+		}
+
+		/**
+		 * Create a NinePatch from the menu shadow bitmap, which stretches its center row and column
+		 * to fill the menu while drawing its corners unscaled
+		 *
+		 * @return a NinePatch wrapping the menu shadow bitmap
+		 */
+		NinePatch createMenuShadowNinePatch() {
 			menuShadowRadius = (int) flyoutMenuView.menuElevation * 2;
 			menuShadowInset = menuShadowRadius / 2;
+
+			Bitmap shadowBitmap = ShadowBitmapCache.get(ShadowBitmapCache.KIND_MENU, 0, (int) flyoutMenuView.menuElevation);
+			if (shadowBitmap == null) {
+				shadowBitmap = createMenuShadowBitmap();
+				ShadowBitmapCache.put(ShadowBitmapCache.KIND_MENU, 0, (int) flyoutMenuView.menuElevation, shadowBitmap);
+			}
+
+			byte[] chunk = createNinePatchChunk(menuShadowRadius, menuShadowRadius + 1, menuShadowRadius, menuShadowRadius + 1);
+			return new NinePatch(shadowBitmap, chunk);
+		}
+
+		/**
+		 * Build a serialized nine patch chunk (see Res_png_9patch in the platform's ResourceTypes.h) describing a
+		 * single stretchable column and row, with no padding.
+		 */
+		static byte[] createNinePatchChunk(int xDivStart, int xDivEnd, int yDivStart, int yDivEnd) {
+			final int numXDivs = 2;
+			final int numYDivs = 2;
+			final int numColors = 9;
+			final int noColor = 0x00000001;
+
+			ByteBuffer buffer = ByteBuffer.allocate(4 + 4 * 7 + 4 * (numXDivs + numYDivs + numColors)).order(ByteOrder.nativeOrder());
+			buffer.put((byte) 1); // wasDeserialized
+			buffer.put((byte) numXDivs);
+			buffer.put((byte) numYDivs);
+			buffer.put((byte) numColors);
+
+			// xDivs & yDivs offsets, ignored
+			buffer.putInt(0);
+			buffer.putInt(0);
+
+			// padding left, right, top, bottom
+			buffer.putInt(0);
+			buffer.putInt(0);
+			buffer.putInt(0);
+			buffer.putInt(0);
+
+			// colors offset, ignored
+			buffer.putInt(0);
+
+			buffer.putInt(xDivStart);
+			buffer.putInt(xDivEnd);
+			buffer.putInt(yDivStart);
+			buffer.putInt(yDivEnd);
+
+			for (int i = 0; i < numColors; i++) {
+				buffer.putInt(noColor);
+			}
+
+			return buffer.array();
+		}
+
+		Bitmap createMenuShadowBitmap() {
 			int size = 2 * menuShadowRadius + 1;
-			Bitmap shadowBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+			Bitmap shadowBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ALPHA_8);
 			shadowBitmap.eraseColor(0x0); // clear
 
 			Paint paint = new Paint();
@@ -1611,9 +3968,34 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 		}
 
 		void invalidateMenuFill() {
+			invalidateMenuPicture();
+			menuOutlineAlpha = -1; // forces an outline update once the menu rect is recomputed
 			menuOpenRect = null;
 			menuOpenShapePath = null;
 			menuOpenRadius = 0;
+			menuCircleShadowShader = null;
+		}
+
+		/**
+		 * Move the menu, its clip path and any open submenus by a delta. The reveal radius, item frames, display
+		 * list and item atlas are all relative to the menu's rect, so remain valid as it moves.
+		 *
+		 * @param dx horizontal distance to move the menu
+		 * @param dy vertical distance to move the menu
+		 */
+		void offsetMenuFill(float dx, float dy) {
+			menuOpenRect.offset(dx, dy);
+			menuOpenShapePath.offset(dx, dy);
+			menuFillButtonCenter.offset(dx, dy);
+
+			submenuParentItemRect.offset(dx, dy);
+			for (int i = 0, n = submenus.size(); i < n; i++) {
+				submenus.get(i).offset(dx, dy);
+			}
+
+			if (flyoutMenuView.shadowMode == SHADOW_MODE_ELEVATION) {
+				invalidateOutline();
+			}
 		}
 
 		boolean needsComputeMenuFill() {
@@ -1622,7 +4004,29 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 		void computeMenuFill() {
 			if (flyoutMenuView.adapter != null && flyoutMenuView.layout != null && needsComputeMenuFill()) {
-				Size menuSize = flyoutMenuView.layout.getMinimumSizeForItems(flyoutMenuView.adapter.getCount(), flyoutMenuView.itemWidth, flyoutMenuView.itemHeight, flyoutMenuView.itemMargin);
+				Size contentSize = getMinimumMenuSize();
+				menuContentWidth = contentSize.width;
+				menuContentHeight = contentSize.height;
+
+				// menus which don't fit on screen, or exceed the maximum menu size, scroll
+				Size menuSize = menuViewportSize;
+				menuSize.width = menuContentWidth;
+				menuSize.height = menuContentHeight;
+				if (!isMenuCircular()) {
+					Rect menuBounds = flyoutMenuView.getMenuBounds();
+					int maxWidth = (int) (menuBounds.width() - 2 * flyoutMenuView.menuMargin);
+					int maxHeight = (int) (menuBounds.height() - 2 * flyoutMenuView.menuMargin);
+					if (flyoutMenuView.maxMenuWidth > 0) {
+						maxWidth = Math.min(maxWidth, flyoutMenuView.maxMenuWidth);
+					}
+					if (flyoutMenuView.maxMenuHeight > 0) {
+						maxHeight = Math.min(maxHeight, flyoutMenuView.maxMenuHeight);
+					}
+					menuSize.width = Math.max(Math.min(menuSize.width, maxWidth), 0);
+					menuSize.height = Math.max(Math.min(menuSize.height, maxHeight), 0);
+				}
+				menuScrollable = menuSize.width < menuContentWidth || menuSize.height < menuContentHeight;
+				configureItemAtlas();
 
 				float buttonRadius = flyoutMenuView.buttonRadius;
 				float buttonLeft = buttonCenter.x - buttonRadius;
@@ -1653,14 +4057,31 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 				int menuLeft = (int) (leftMin + flyoutMenuView.horizontalMenuAnchor * (leftMax - leftMin));
 				int menuTop = (int) (topMin + flyoutMenuView.verticalMenuAnchor * (topMax - topMin));
+				menuShapeCornerRadius = menuBackgroundCornerRadius;
+
+				if (isMenuCircular()) {
+					// radial menus surround the button, ignoring the anchors
+					menuLeft = (int) (buttonCenter.x - menuSize.width / 2f);
+					menuTop = (int) (buttonCenter.y - menuSize.height / 2f);
+					menuShapeCornerRadius = Math.min(menuSize.width, menuSize.height) / 2f;
+				}
 
 				// the frame of the menu, when open
 				menuOpenRect = new RectF(menuLeft, menuTop, menuLeft + menuSize.width, menuTop + menuSize.height);
-				sanitizeMenuPosition(menuOpenRect);
+				if (!isMenuCircular()) {
+					// a radial menu stays centered on the button since its items are selected by direction
+					// from it; near a screen edge some items are cut off, but their slices still reach the
+					// button so they remain selectable
+					sanitizeMenuPosition(menuOpenRect);
+				}
 
 				// the round rect we'll use as clipping mask for the animated fill
 				menuOpenShapePath = new Path();
-				menuOpenShapePath.addRoundRect(menuOpenRect, menuBackgroundCornerRadius, menuBackgroundCornerRadius, Path.Direction.CW);
+				menuOpenShapePath.addRoundRect(menuOpenRect, menuShapeCornerRadius, menuShapeCornerRadius, Path.Direction.CW);
+
+				// the same shape in the menu's coordinate space
+				menuLocalShapePath.set(menuOpenShapePath);
+				menuLocalShapePath.offset(-menuOpenRect.left, -menuOpenRect.top);
 
 				// compute the circular radius to fill the menuOpenShapePath
 				float a = distanceToButtonCenter(menuOpenRect.left, menuOpenRect.top);
@@ -1668,27 +4089,35 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 				float c = distanceToButtonCenter(menuOpenRect.right, menuOpenRect.bottom);
 				float d = distanceToButtonCenter(menuOpenRect.left, menuOpenRect.bottom);
 				menuOpenRadius = (int) Math.max(a, Math.max(b, Math.max(c, d)));
+
+				// the scroll range may have changed
+				menuScrollX = Math.min(menuScrollX, getMaxMenuScrollX());
+				menuScrollY = Math.min(menuScrollY, getMaxMenuScrollY());
+
+				menuFillButtonCenter.set(buttonCenter.x, buttonCenter.y);
 			}
 		}
 
 		/**
-		 * Attempt to position menuRect such that it does not fall off any screen edge or overlap the navigation bar
+		 * Attempt to position menuRect such that it does not fall off any window edge or overlap the system bars
 		 *
 		 * @param menuRect the menuRect to fit to
 		 */
 		void sanitizeMenuPosition(RectF menuRect) {
-			Point appUsableScreenSize = getAppUsableScreenSize();
+			Rect menuBounds = flyoutMenuView.getMenuBounds();
 			float margin = flyoutMenuView.menuMargin;
-			float right = appUsableScreenSize.x - margin;
-			float bottom = appUsableScreenSize.y - margin;
+			float left = menuBounds.left + margin;
+			float top = menuBounds.top + margin;
+			float right = menuBounds.right - margin;
+			float bottom = menuBounds.bottom - margin;
 
-			if (menuRect.left < margin) {
-				float dx = margin - menuRect.left;
+			if (menuRect.left < left) {
+				float dx = left - menuRect.left;
 				menuRect.offset(dx, 0);
 			}
 
-			if (menuRect.top < margin) {
-				float dy = margin - menuRect.top;
+			if (menuRect.top < top) {
+				float dy = top - menuRect.top;
 				menuRect.offset(0, dy);
 			}
 
@@ -1711,30 +4140,319 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 
 		void invalidateMenuItemLayout() {
-			itemLayouts.clear();
+			itemsNeedLayout = true;
 
 			// a new layout affects positioning of the menu as well
 			invalidateMenuFill();
 		}
 
 		boolean needsLayoutMenuItems() {
-			return itemLayouts.isEmpty();
+			return itemsNeedLayout;
 		}
 
 		void layoutMenuItems() {
 			if (flyoutMenuView.adapter != null && flyoutMenuView.layout != null && needsLayoutMenuItems()) {
 
-				for (int i = 0, n = flyoutMenuView.adapter.getCount(); i < n; i++) {
-					MenuItemLayout itemLayout = new MenuItemLayout();
-					itemLayout.item = flyoutMenuView.adapter.getItem(i);
-					itemLayout.itemAdapterPosition = i;
-					itemLayout.frame = new RectF(flyoutMenuView.layout.getLayoutRectForItem(i, flyoutMenuView.itemWidth, flyoutMenuView.itemHeight, flyoutMenuView.itemMargin));
-					itemLayout.bounds = new RectF(0, 0, flyoutMenuView.itemWidth, flyoutMenuView.itemHeight);
+				setItemCount(flyoutMenuView.adapter.getCount());
+				updateMenuItemLayouts(0);
+				itemsNeedLayout = false;
 
-					itemLayouts.add(itemLayout);
+				// the menu fill, and with it the item atlas, depend on the layout
+				invalidateMenuFill();
+			}
+		}
+
+		void invalidateItemCache() {
+			itemAtlas.invalidate();
+			invalidateMenuPicture();
+		}
+
+		/**
+		 * Resize the item arrays to hold a given number of items, preserving existing contents. Arrays grow
+		 * with some headroom so that inserting items one at a time doesn't reallocate every time.
+		 */
+		void setItemCount(int count) {
+			if (items.length < count) {
+				int capacity = Math.max(count, items.length + items.length / 2);
+				MenuItem[] newItems = new MenuItem[capacity];
+				System.arraycopy(items, 0, newItems, 0, itemCount);
+				items = newItems;
+
+				float[] newItemFrames = new float[capacity * 4];
+				System.arraycopy(itemFrames, 0, newItemFrames, 0, itemCount * 4);
+				itemFrames = newItemFrames;
+
+				int[] newItemSizes = new int[capacity * 2];
+				System.arraycopy(itemSizes, 0, newItemSizes, 0, itemCount * 2);
+				itemSizes = newItemSizes;
+			}
+
+			// release items past the end
+			for (int i = count; i < itemCount; i++) {
+				items[i] = null;
+			}
+
+			// new positions haven't been measured
+			for (int i = itemCount; i < count; i++) {
+				itemSizes[i * 2] = -1;
+			}
+
+			itemCount = count;
+		}
+
+		/**
+		 * Mark every item's cached measurement stale, so items are measured again at the next layout pass
+		 */
+		void invalidateItemMeasurements() {
+			for (int i = 0; i < itemCount; i++) {
+				itemSizes[i * 2] = -1;
+			}
+		}
+
+		/**
+		 * Measure the items which have no cached measurement
+		 */
+		void measureMenuItems() {
+			for (int i = 0; i < itemCount; i++) {
+				if (itemSizes[i * 2] < 0) {
+					measureMenuItem(i);
+				}
+			}
+		}
+
+		/**
+		 * @return true if the item's measured size changed
+		 */
+		boolean measureMenuItem(int position) {
+			int width = itemSizes[position * 2];
+			int height = itemSizes[position * 2 + 1];
+
+			getMenuItem(position).onMeasure(itemMeasureSize, flyoutMenuView.itemWidth, flyoutMenuView.itemHeight);
+			itemSizes[position * 2] = Math.max(itemMeasureSize.width, 0);
+			itemSizes[position * 2 + 1] = Math.max(itemMeasureSize.height, 0);
+
+			return itemSizes[position * 2] != width || itemSizes[position * 2 + 1] != height;
+		}
+
+		/**
+		 * @return the size of the menu needed to show its items
+		 */
+		Size getMinimumMenuSize() {
+			Layout layout = flyoutMenuView.layout;
+			if (layout instanceof VariableSizeLayout) {
+				return ((VariableSizeLayout) layout).getMinimumSizeForMeasuredItems(itemCount, itemSizes, flyoutMenuView.itemMargin);
+			}
+			return layout.getMinimumSizeForItems(flyoutMenuView.adapter.getCount(), flyoutMenuView.itemWidth, flyoutMenuView.itemHeight, flyoutMenuView.itemMargin);
+		}
+
+		/**
+		 * Size the item atlas's cells to fit the largest item
+		 */
+		void configureItemAtlas() {
+			if (!flyoutMenuView.itemCacheEnabled) {
+				return;
+			}
+
+			float cellWidth = 0;
+			float cellHeight = 0;
+			float minItemWidth = Float.MAX_VALUE;
+			float minItemHeight = Float.MAX_VALUE;
+			for (int i = 0; i < itemCount; i++) {
+				int f = i * 4;
+				cellWidth = Math.max(cellWidth, itemFrames[f + 2] - itemFrames[f]);
+				cellHeight = Math.max(cellHeight, itemFrames[f + 3] - itemFrames[f + 1]);
+				minItemWidth = Math.min(minItemWidth, itemFrames[f + 2] - itemFrames[f]);
+				minItemHeight = Math.min(minItemHeight, itemFrames[f + 3] - itemFrames[f + 1]);
+			}
+
+			// a scrolling menu only needs room in the atlas for the items its viewport can show at once,
+			// including those partly in view at either edge
+			int visibleItemCount = itemCount;
+			if (menuScrollable) {
+				int itemMargin = flyoutMenuView.itemMargin;
+				int visibleColumns = (int) (menuViewportSize.width / Math.max(minItemWidth + itemMargin, 1)) + 2;
+				int visibleRows = (int) (menuViewportSize.height / Math.max(minItemHeight + itemMargin, 1)) + 2;
+				visibleItemCount = Math.min(itemCount, visibleColumns * visibleRows);
+			}
+
+			itemAtlas.configure(itemCount, visibleItemCount, (int) Math.ceil(cellWidth), (int) Math.ceil(cellHeight));
+		}
+
+		/**
+		 * Render the items in view into the item atlas ahead of the menu opening, so the atlas bitmap isn't
+		 * modified, and uploaded to the GPU again, on each frame of the reveal as more items come into view
+		 */
+		void prefillItemAtlas() {
+			int count = itemCount;
+			int[] positions = null;
+			if (menuScrollable) {
+				count = getItemSpatialIndex().query(itemFrames,
+						menuScrollX, menuScrollY,
+						menuScrollX + menuViewportSize.width, menuScrollY + menuViewportSize.height,
+						visibleItems);
+				positions = visibleItems;
+			}
+
+			for (int n = 0; n < count; n++) {
+				int i = positions != null ? positions[n] : n;
+				int f = i * 4;
+				itemBounds.set(0, 0, itemFrames[f + 2] - itemFrames[f], itemFrames[f + 3] - itemFrames[f + 1]);
+
+				MenuItem item = getMenuItem(i);
+				if (!itemAtlas.render(item, i, itemBounds, item == flyoutMenuView.selectedMenuItem)) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Assign items and frames from a given adapter position to the end of the menu
+		 *
+		 * @param positionStart the adapter position of the first item to update
+		 */
+		void updateMenuItemLayouts(int positionStart) {
+			Layout layout = flyoutMenuView.layout;
+			int itemWidth = flyoutMenuView.itemWidth;
+			int itemHeight = flyoutMenuView.itemHeight;
+			int itemMargin = flyoutMenuView.itemMargin;
+
+			// the adapter's items from positionStart onwards may have shifted, they're fetched again when needed
+			Arrays.fill(items, positionStart, itemCount, null);
+
+			if (layout instanceof VariableSizeLayout) {
+				// an item's size affects the position of those after it, so the whole menu is laid out
+				measureMenuItems();
+				((VariableSizeLayout) layout).layoutMeasuredItems(itemCount, itemSizes, itemMargin, itemFrames);
+			} else if (asBulkLayout(layout) != null) {
+				asBulkLayout(layout).layoutItems(itemCount, positionStart, itemCount, itemWidth, itemHeight, itemMargin, itemFrames);
+			} else {
+				for (int i = positionStart; i < itemCount; i++) {
+					Rect rect = layout.getLayoutRectForItem(i, itemWidth, itemHeight, itemMargin);
+					int f = i * 4;
+					itemFrames[f] = rect.left;
+					itemFrames[f + 1] = rect.top;
+					itemFrames[f + 2] = rect.right;
+					itemFrames[f + 3] = rect.bottom;
+				}
+			}
+
+			// the spatial index is rebuilt when next needed
+			itemSpatialIndexValid = false;
+		}
+
+		/**
+		 * @return the spatial index of the item frames, rebuilt first if the items have moved since it was last built
+		 */
+		MenuItemSpatialIndex getItemSpatialIndex() {
+			if (!itemSpatialIndexValid) {
+				itemSpatialIndex.build(itemFrames, itemCount);
+				if (visibleItems.length < itemCount) {
+					visibleItems = new int[items.length];
+				}
+				itemSpatialIndexValid = true;
+			}
+			return itemSpatialIndex;
+		}
+
+		void onItemRangeChanged(int positionStart, int itemCount) {
+			for (int i = positionStart; i < positionStart + itemCount; i++) {
+				itemAtlas.invalidate(i);
+			}
+
+			// a changed item may have lost its submenu, or been resized, moving the items after it
+			closeSubmenusFrom(positionStart);
+
+			if (needsLayoutMenuItems()) {
+				// nothing to patch, the layouts will be built when the menu is next drawn
+				for (int i = positionStart, n = Math.min(positionStart + itemCount, this.itemCount); i < n; i++) {
+					itemSizes[i * 2] = -1;
+				}
+				return;
+			}
+
+			int positionEnd = Math.min(positionStart + itemCount, this.itemCount);
+			boolean measuredSizeChanged = false;
+			for (int i = positionStart; i < positionEnd; i++) {
+				items[i] = null;
+				if (flyoutMenuView.layout instanceof VariableSizeLayout) {
+					measuredSizeChanged |= measureMenuItem(i);
+				} else {
+					itemSizes[i * 2] = -1;
 				}
+			}
+
+			if (measuredSizeChanged) {
+				// items after the resized ones may have moved
+				updateMenuItemLayouts(positionStart);
+				onMenuItemFramesChanged();
+			} else {
+				// the items' frames are unaffected, so they're just redrawn
+				menuPictureNeedsRecording = true;
+				invalidateItems();
+			}
+		}
+
+		void onItemRangeInserted(int positionStart, int itemCount) {
+			// cached renderings are stored by adapter position, so those after the insertion are stale
+			itemAtlas.invalidateFrom(positionStart);
+			closeSubmenusFrom(positionStart);
+
+			if (needsLayoutMenuItems()) {
+				// cached measurements no longer line up with adapter positions
+				invalidateItemMeasurements();
+				return;
+			}
+
+			// the items from positionStart onwards are fetched again from the adapter, which has already shifted
+			// them, but their cached measurements have to be shifted to match
+			int previousItemCount = this.itemCount;
+			setItemCount(previousItemCount + itemCount);
+			System.arraycopy(itemSizes, positionStart * 2, itemSizes, (positionStart + itemCount) * 2, (previousItemCount - positionStart) * 2);
+			for (int i = positionStart; i < positionStart + itemCount; i++) {
+				itemSizes[i * 2] = -1;
+			}
+
+			updateMenuItemLayouts(positionStart);
+			onMenuItemFramesChanged();
+		}
+
+		void onItemRangeRemoved(int positionStart, int itemCount) {
+			itemAtlas.invalidateFrom(positionStart);
+			closeSubmenusFrom(positionStart);
+
+			if (needsLayoutMenuItems()) {
+				// cached measurements no longer line up with adapter positions
+				invalidateItemMeasurements();
+				return;
+			}
+
+			int positionEnd = Math.min(positionStart + itemCount, this.itemCount);
+			System.arraycopy(itemSizes, positionEnd * 2, itemSizes, positionStart * 2, (this.itemCount - positionEnd) * 2);
+			setItemCount(this.itemCount - (positionEnd - positionStart));
+
+			updateMenuItemLayouts(positionStart);
+			onMenuItemFramesChanged();
+		}
+
+		/**
+		 * Called after items were inserted, removed or resized. If the menu's size is unchanged the items are
+		 * just redrawn, otherwise the menu is repositioned.
+		 */
+		void onMenuItemFramesChanged() {
+			menuPictureNeedsRecording = true;
 
+			if (menuOpenRect == null) {
+				return;
+			}
+
+			Size contentSize = getMinimumMenuSize();
+			if (contentSize.width != menuContentWidth || contentSize.height != menuContentHeight) {
+				// the item atlas is configured along with the new menu fill
 				invalidateMenuFill();
+				invalidate();
+			} else {
+				configureItemAtlas();
+				invalidateItems();
 			}
 		}
 
@@ -1752,32 +4470,377 @@ public class FlyoutMenuView extends View implements ValueAnimator.AnimatorUpdate
 
 		@Nullable
 		MenuItem findMenuItemAtLocalPosition(float x, float y) {
+			int level = Math.max(findMenuLevelAtLocalPosition(x, y), 0);
+			MenuItem item = getMenuItem(level, findMenuItemPositionAtLocalPosition(level, x, y));
+
+			// items which are still loading can't be selected
+			return item instanceof PlaceholderMenuItem ? null : item;
+		}
+
+		/**
+		 * @param x the x coordinate location (in the coordinate system of the MenuOverlayView)
+		 * @param y the y coordinate location (in the coordinate system of the MenuOverlayView)
+		 * @return the level of the topmost menu under the location, where 0 is the root menu and higher levels are submenus, or -1 if none
+		 */
+		int findMenuLevelAtLocalPosition(float x, float y) {
+			for (int i = submenus.size() - 1; i >= 0; i--) {
+				if (submenus.get(i).rect.contains(x, y)) {
+					return i + 1;
+				}
+			}
+			return menuOpenRect != null && menuOpenRect.contains(x, y) ? 0 : -1;
+		}
+
+		/**
+		 * @param position the adapter position of a root menu item
+		 * @return the item, fetched from the adapter the first time it's needed
+		 */
+		MenuItem getMenuItem(int position) {
+			MenuItem item = items[position];
+			if (item == null) {
+				item = flyoutMenuView.adapter.getItem(position);
+				items[position] = item;
+			}
+			return item;
+		}
+
+		/**
+		 * Find a root menu item's position without fetching every item from the adapter. An AsyncAdapter's
+		 * items which haven't loaded are skipped rather than loaded.
+		 *
+		 * @param item the item to find
+		 * @return the item's adapter position, or -1 if it isn't in the menu
+		 */
+		int findMenuItemPosition(MenuItem item) {
+			Adapter adapter = flyoutMenuView.adapter;
+			if (adapter instanceof BaseAdapter && ((BaseAdapter) adapter).hasStableIds()) {
+				int position = flyoutMenuView.getAdapterPositionForMenuItemId(item.getId());
+				return position < itemCount ? position : -1;
+			}
+
+			AsyncAdapter asyncAdapter = adapter instanceof AsyncAdapter ? (AsyncAdapter) adapter : null;
+			for (int i = 0; i < itemCount; i++) {
+				if (asyncAdapter != null && !asyncAdapter.isItemLoaded(i)) {
+					continue;
+				}
+				if (getMenuItem(i) == item) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		/**
+		 * @return the MenuItem at a position in the menu at a given level, or null if there is none
+		 */
+		@Nullable
+		MenuItem getMenuItem(int level, int position) {
+			if (level == 0) {
+				return position >= 0 && position < itemCount ? getMenuItem(position) : null;
+			}
+
+			Submenu submenu = submenus.get(level - 1);
+			return position >= 0 && position < submenu.itemCount ? submenu.items[position] : null;
+		}
+
+		/**
+		 * Find the position of the item under a location, in the menu at a given level
+		 *
+		 * @param level the menu level, where 0 is the root menu
+		 * @param x     the x coordinate location (in the coordinate system of the MenuOverlayView)
+		 * @param y     the y coordinate location (in the coordinate system of the MenuOverlayView)
+		 * @return the item's position, or -1 if there is none
+		 */
+		int findMenuItemPositionAtLocalPosition(int level, float x, float y) {
+			if (level > 0) {
+				return submenus.get(level - 1).findItemPositionAt(x, y);
+			}
+
+			// items scrolled out of view can't be hit
+			if (menuScrollable && !menuOpenRect.contains(x, y)) {
+				return -1;
+			}
 
 			// convert the point from the MenuOverlayView's coordinate system to the menu's
-			float menuX = x - menuOpenRect.left;
-			float menuY = y - menuOpenRect.top;
+			float menuX = x - menuOpenRect.left + menuScrollX;
+			float menuY = y - menuOpenRect.top + menuScrollY;
+
+			int position;
+			InvertibleLayout invertibleLayout = asInvertibleLayout(flyoutMenuView.layout);
+			if (invertibleLayout != null) {
+				position = invertibleLayout.getItemPositionAt(menuX, menuY, itemCount, flyoutMenuView.itemWidth, flyoutMenuView.itemHeight, flyoutMenuView.itemMargin);
+			} else {
+				position = getItemSpatialIndex().get(itemFrames, menuX, menuY);
+			}
+
+			return position;
+		}
+
+		/**
+		 * Restart the submenu dwell timer when a drag moves onto a different item. When it fires, submenus of
+		 * other items close, and if the item has a submenu it opens.
+		 *
+		 * @param x the x coordinate of the drag (in the coordinate system of the parent FlyoutMenuView)
+		 * @param y the y coordinate of the drag (in the coordinate system of the parent FlyoutMenuView)
+		 */
+		void updateSubmenuDwellAtFlyoutMenuViewRelativePosition(float x, float y) {
+			x += flyoutMenuViewRect.left;
+			y += flyoutMenuViewRect.top;
+
+			int level = findMenuLevelAtLocalPosition(x, y);
+			if (level < 0) {
+				// dragging outside the menus leaves them as they are
+				cancelSubmenuDwell();
+				return;
+			}
 
-			for (MenuItemLayout menuItemLayout : itemLayouts) {
-				if (menuX >= menuItemLayout.frame.left && menuX <= menuItemLayout.frame.right &&
-						menuY >= menuItemLayout.frame.top && menuY <= menuItemLayout.frame.bottom) {
-					return menuItemLayout.item;
+			int position = findMenuItemPositionAtLocalPosition(level, x, y);
+			if (level != submenuDwellLevel || position != submenuDwellPosition) {
+				cancelSubmenuDwell();
+				if (position >= 0) {
+					submenuDwellLevel = level;
+					submenuDwellPosition = position;
+					postDelayed(submenuDwellRunnable, SUBMENU_DWELL_MILLIS);
 				}
 			}
+		}
 
-			return null;
+		void cancelSubmenuDwell() {
+			removeCallbacks(submenuDwellRunnable);
+			submenuDwellLevel = -1;
+			submenuDwellPosition = -1;
+		}
+
+		void openSubmenuAtFlyoutMenuViewRelativePosition(float x, float y) {
+			openSubmenuAtLocalPosition(flyoutMenuViewRect.left + x, flyoutMenuViewRect.top + y);
+		}
+
+		void openSubmenuAtLocalPosition(float x, float y) {
+			int level = findMenuLevelAtLocalPosition(x, y);
+			if (level >= 0) {
+				openSubmenu(level, findMenuItemPositionAtLocalPosition(level, x, y));
+			}
 		}
 
 		/**
-		 * Get the usable screen size (everything but the navigation bar)
-		 * http://stackoverflow.com/questions/20264268/how-to-get-height-and-width-of-navigation-bar-programmatically/29938139#29938139
-		 * @return the size of the usable area of the screen
+		 * Close the submenus above a given menu level, except the one opened from the given item, and open the
+		 * item's submenu if it has one and it isn't already open. The submenu is created and laid out here, on first use.
+		 *
+		 * @param level    the level of the menu containing the item, where 0 is the root menu
+		 * @param position the position of the item in that menu
 		 */
-		Point getAppUsableScreenSize() {
-			WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
-			Display display = windowManager.getDefaultDisplay();
-			Point size = new Point();
-			display.getSize(size);
-			return size;
+		void openSubmenu(int level, int position) {
+			// the dwell target is kept, so resting on the item doesn't open it again
+			removeCallbacks(submenuDwellRunnable);
+			if (level > submenus.size()) {
+				return;
+			}
+
+			MenuItem item = getMenuItem(level, position);
+			if (item != null && submenus.size() > level && submenus.get(level).parentItem == item) {
+				// already open, but close any submenus opened from it
+				closeSubmenus(level + 1);
+				return;
+			}
+
+			closeSubmenus(level);
+			if (item == null || !item.hasSubmenu() || item.getSubmenuAdapter() == null || menuOpenRect == null) {
+				return;
+			}
+
+			// the parent item's frame, and that of its menu, in this view's coordinate space
+			RectF parentMenuRect;
+			if (level == 0) {
+				int f = position * 4;
+				float left = menuOpenRect.left - menuScrollX;
+				float top = menuOpenRect.top - menuScrollY;
+				submenuParentItemRect.set(left + itemFrames[f], top + itemFrames[f + 1], left + itemFrames[f + 2], top + itemFrames[f + 3]);
+				parentMenuRect = menuOpenRect;
+			} else {
+				Submenu parent = submenus.get(level - 1);
+				int f = position * 4;
+				submenuParentItemRect.set(parent.itemFrames[f], parent.itemFrames[f + 1], parent.itemFrames[f + 2], parent.itemFrames[f + 3]);
+				submenuParentItemRect.offset(parent.rect.left, parent.rect.top);
+				parentMenuRect = parent.rect;
+			}
+
+			Submenu submenu = new Submenu(item, position);
+			submenu.layout(flyoutMenuView, submenuParentItemRect);
+			if (!placeSubmenu(submenu.rect, submenuParentItemRect, parentMenuRect)) {
+				return;
+			}
+			submenu.updateShape(submenuParentItemRect, menuBackgroundCornerRadius);
+			submenus.add(submenu);
+
+			submenu.animation = TransitionPool.acquire(ANIMATION_INTERPOLATOR, submenuTransitionListener);
+			submenu.animation.start(0, 1, ANIMATION_DURATION_MILLIS, 0);
+		}
+
+		/**
+		 * Move a submenu beside the menu it was opened from, on whichever side fits on screen, and failing
+		 * that below or above it. The submenu never overlaps the root menu, which in the hardware reveal mode
+		 * is drawn by the MenuRevealView above this view, and would hide a submenu that still took touches.
+		 *
+		 * @param rect           the submenu's rect, sized and level with its parent item
+		 * @param parentItemRect the frame of the parent item
+		 * @param parentMenuRect the frame of the menu containing the parent item
+		 * @return true if the submenu was placed, false if it fits nowhere on screen
+		 */
+		boolean placeSubmenu(RectF rect, RectF parentItemRect, RectF parentMenuRect) {
+			float spacing = flyoutMenuView.menuMargin / 2;
+			float levelTop = rect.top;
+			return placeSubmenuAt(rect, parentMenuRect.right + spacing, levelTop, parentMenuRect) ||
+					placeSubmenuAt(rect, parentMenuRect.left - spacing - rect.width(), levelTop, parentMenuRect) ||
+					placeSubmenuAt(rect, parentItemRect.left, parentMenuRect.bottom + spacing, parentMenuRect) ||
+					placeSubmenuAt(rect, parentItemRect.left, parentMenuRect.top - spacing - rect.height(), parentMenuRect);
+		}
+
+		private boolean placeSubmenuAt(RectF rect, float left, float top, RectF parentMenuRect) {
+			rect.offsetTo(left, top);
+			sanitizeMenuPosition(rect);
+			return !RectF.intersects(rect, menuOpenRect) && !RectF.intersects(rect, parentMenuRect);
+		}
+
+		/**
+		 * Shared by the transitions of every open submenu, each update is routed to the submenu owning the transition
+		 */
+		Transition.Listener submenuTransitionListener = new Transition.Listener() {
+			@Override
+			public void onTransitionUpdate(Transition transition) {
+				for (int i = 0, n = submenus.size(); i < n; i++) {
+					Submenu submenu = submenus.get(i);
+					if (submenu.animation == transition) {
+						submenu.transition = transition.getValue();
+						submenu.transitionChanged = true;
+						return;
+					}
+				}
+			}
+
+			@Override
+			public void onTransitionEnd(Transition transition) {
+			}
+
+			@Override
+			public void onTransitionsAdvanced() {
+				for (int i = 0, n = submenus.size(); i < n; i++) {
+					Submenu submenu = submenus.get(i);
+					if (submenu.transitionChanged) {
+						submenu.transitionChanged = false;
+						invalidate();
+					}
+				}
+			}
+		};
+
+		/**
+		 * Close every submenu above a given menu level
+		 *
+		 * @param level the level of the topmost menu to keep open, 0 closes all submenus
+		 */
+		void closeSubmenus(int level) {
+			while (submenus.size() > level) {
+				Submenu submenu = submenus.remove(submenus.size() - 1);
+				TransitionPool.release(submenu.animation);
+				submenu.animation = null;
+				invalidate();
+			}
+
+			if (submenuDwellLevel > level) {
+				cancelSubmenuDwell();
+			}
+		}
+
+		/**
+		 * Close the submenus, and cancel any pending submenu dwell, opened from root menu items at or after a given
+		 * adapter position, since those items have moved or changed
+		 *
+		 * @param positionStart the adapter position of the first root menu item which moved or changed
+		 */
+		void closeSubmenusFrom(int positionStart) {
+			if (!submenus.isEmpty() && submenus.get(0).parentPosition >= positionStart) {
+				closeSubmenus(0);
+			}
+
+			if (submenuDwellLevel == 0 && submenuDwellPosition >= positionStart) {
+				cancelSubmenuDwell();
+			}
+		}
+
+		/**
+		 * Draw a submenu and its shadow. Submenus always cast bitmap shadows, since they share the MenuOverlayView's outline.
+		 */
+		void drawSubmenu(Canvas canvas, Submenu submenu) {
+			paint.setAlpha(0xFF);
+			paint.setStyle(Paint.Style.FILL);
+
+			float pinion = 0.5f;
+			if (flyoutMenuView.menuElevation > 0 && submenu.transition > pinion) {
+				float shadowAlpha = (submenu.transition - pinion) / (1f - pinion);
+				int menuShadowOffset = (int) (flyoutMenuView.menuElevation / 2);
+				drawMenuShadow(canvas, paint, submenu.rect, getMenuShadowNinePatch(), menuShadowRadius, menuShadowInset, 0, menuShadowOffset, shadowAlpha * shadowAlpha);
+			}
+
+			submenu.draw(canvas, paint, flyoutMenuView, menuBackgroundCornerRadius);
+		}
+	}
+
+	/**
+	 * Draws menu content into a hardware layer, and reveals it by animating an oval outline clip
+	 * instead of clipping with a path every frame. The menu shape clip is applied once when the
+	 * layer content is drawn, so an animation frame only updates the outline.
+	 */
+	@SuppressLint("ViewConstructor")
+	static class MenuRevealView extends View {
+
+		MenuOverlayView menuOverlayView;
+		float revealCenterX;
+		float revealCenterY;
+		float revealRadius;
+
+		ViewOutlineProvider revealOutlineProvider = new ViewOutlineProvider() {
+			@Override
+			public void getOutline(View view, Outline outline) {
+				// an oval outline whose bounds aren't square falls back to a path, which can't clip before API 33,
+				// so round once and give the circle a single side length
+				int diameter = (int) Math.ceil(2 * revealRadius);
+				int left = Math.round(revealCenterX) - diameter / 2;
+				int top = Math.round(revealCenterY) - diameter / 2;
+				outline.setRoundRect(left, top, left + diameter, top + diameter, diameter / 2f);
+
+				// the outline is only used for clipping, the menu shadow is drawn by the MenuOverlayView
+				outline.setAlpha(0);
+			}
+		};
+
+		public MenuRevealView(Context context, MenuOverlayView menuOverlayView) {
+			super(context);
+			this.menuOverlayView = menuOverlayView;
+			setLayerType(LAYER_TYPE_HARDWARE, null);
+			setOutlineProvider(revealOutlineProvider);
+			setClipToOutline(true);
+		}
+
+		void setRevealCircle(float centerX, float centerY, float radius) {
+			if (centerX != revealCenterX || centerY != revealCenterY || radius != revealRadius) {
+				revealCenterX = centerX;
+				revealCenterY = centerY;
+				revealRadius = radius;
+				invalidateOutline();
+			}
+		}
+
+		@Override
+		protected void onDraw(Canvas canvas) {
+			if (menuOverlayView.menuOpenRect == null) {
+				return;
+			}
+
+			canvas.save();
+			canvas.clipPath(menuOverlayView.menuLocalShapePath);
+			menuOverlayView.drawMenuContent(canvas, -1);
+			canvas.restore();
 		}
 	}
 }
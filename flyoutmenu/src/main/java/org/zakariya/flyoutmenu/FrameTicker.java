@@ -0,0 +1,132 @@
+package org.zakariya.flyoutmenu;
+
+import android.animation.ValueAnimator;
+import android.os.Build;
+import android.view.Choreographer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+
+/**
+ * Process-wide driver of every running Transition. A single Choreographer frame callback advances all
+ * transitions of every FlyoutMenuView in one pass per vsync, then notifies each listener whose
+ * transitions changed exactly once, which lets views coalesce their invalidation. The callback is only
+ * posted while transitions are running. Used only on the UI thread.
+ */
+final class FrameTicker {
+
+	private static final ArrayList<Transition> transitions = new ArrayList<>();
+
+	// the transitions advanced in the current pass, and the listeners of those which changed
+	private static final ArrayList<Transition> frameTransitions = new ArrayList<>();
+	private static final ArrayList<Transition.Listener> frameListeners = new ArrayList<>();
+
+	private static boolean scheduled;
+
+	// ValueAnimator's accessor for the duration scale, which is hidden before API 26
+	private static Method durationScaleMethod;
+	private static boolean durationScaleMethodLookedUp;
+
+	private static final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			scheduled = false;
+			tick(frameTimeNanos);
+		}
+	};
+
+	private FrameTicker() {
+	}
+
+	static void add(Transition transition) {
+		transitions.add(transition);
+		if (!scheduled) {
+			scheduled = true;
+			Choreographer.getInstance().postFrameCallback(frameCallback);
+		}
+	}
+
+	static void remove(Transition transition) {
+		transitions.remove(transition);
+		if (transitions.isEmpty() && scheduled) {
+			scheduled = false;
+			Choreographer.getInstance().removeFrameCallback(frameCallback);
+		}
+	}
+
+	/**
+	 * @return the animator duration scale set in the developer options, by which transitions are slowed or sped up.
+	 * It is 0 when animations are turned off, for instance for accessibility, in which case transitions jump to their end values.
+	 */
+	static float getDurationScale() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+			return ValueAnimator.getDurationScale();
+		}
+
+		if (!durationScaleMethodLookedUp) {
+			durationScaleMethodLookedUp = true;
+			try {
+				durationScaleMethod = ValueAnimator.class.getMethod("getDurationScale");
+			} catch (NoSuchMethodException e) {
+				// transitions run at their nominal durations
+			}
+		}
+
+		if (durationScaleMethod != null) {
+			try {
+				return (Float) durationScaleMethod.invoke(null);
+			} catch (Exception e) {
+				durationScaleMethod = null;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Advance every running transition to a frame, and notify their listeners. Called by the frame callback,
+	 * and directly by tests which drive frames themselves.
+	 */
+	static void tick(long frameTimeNanos) {
+		// listeners may start and cancel transitions, so advance a snapshot of those running at the start of the frame
+		for (int i = 0, n = transitions.size(); i < n; i++) {
+			frameTransitions.add(transitions.get(i));
+		}
+
+		for (int i = 0, n = frameTransitions.size(); i < n; i++) {
+			Transition transition = frameTransitions.get(i);
+			if (!transition.isRunning() || !transition.advance(frameTimeNanos)) {
+				continue;
+			}
+
+			// removed before the listener hears of it, so the listener may restart it
+			boolean ended = !transition.isRunning();
+			if (ended) {
+				transitions.remove(transition);
+			}
+
+			Transition.Listener listener = transition.getListener();
+			if (listener != null) {
+				if (!frameListeners.contains(listener)) {
+					frameListeners.add(listener);
+				}
+
+				listener.onTransitionUpdate(transition);
+				if (ended) {
+					listener.onTransitionEnd(transition);
+				}
+			}
+		}
+
+		for (int i = 0, n = frameListeners.size(); i < n; i++) {
+			frameListeners.get(i).onTransitionsAdvanced();
+		}
+
+		frameTransitions.clear();
+		frameListeners.clear();
+
+		if (!transitions.isEmpty() && !scheduled) {
+			scheduled = true;
+			Choreographer.getInstance().postFrameCallback(frameCallback);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.zakariya.flyoutmenu;
+
+import android.graphics.Rect;
+
+/**
+ * GridLayout's geometry, as used by FlyoutMenuView to lay out and hit test a plain GridLayout directly from
+ * its grid, without a Rect per item. A subclass of GridLayout may place items elsewhere by overriding
+ * getLayoutRectForItem, so this is never used for subclasses, see FlyoutMenuView.asBulkLayout and
+ * asInvertibleLayout. A subclass which can do either itself implements BulkLayout or InvertibleLayout.
+ */
+final class GridLayoutGeometry implements FlyoutMenuView.BulkLayout, FlyoutMenuView.InvertibleLayout {
+
+	private final FlyoutMenuView.GridLayout gridLayout;
+
+	GridLayoutGeometry(FlyoutMenuView.GridLayout gridLayout) {
+		this.gridLayout = gridLayout;
+	}
+
+	@Override
+	public FlyoutMenuView.Size getMinimumSizeForItems(int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+		return gridLayout.getMinimumSizeForItems(itemCount, itemWidthPx, itemHeightPx, itemMarginPx);
+	}
+
+	@Override
+	public Rect getLayoutRectForItem(int positionInList, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+		return gridLayout.getLayoutRectForItem(positionInList, itemWidthPx, itemHeightPx, itemMarginPx);
+	}
+
+	@Override
+	public void layoutItems(int itemCount, int positionStart, int positionEnd, int itemWidthPx, int itemHeightPx, int itemMarginPx, float[] outFrames) {
+		for (int position = positionStart; position < positionEnd; position++) {
+			int row = gridLayout.getRow(position);
+			int col = gridLayout.getColumn(position);
+			int left = col * itemWidthPx + (col + 1) * itemMarginPx;
+			int top = row * itemHeightPx + (row + 1) * itemMarginPx;
+
+			int f = position * 4;
+			outFrames[f] = left;
+			outFrames[f + 1] = top;
+			outFrames[f + 2] = left + itemWidthPx;
+			outFrames[f + 3] = top + itemHeightPx;
+		}
+	}
+
+	@Override
+	public int getItemPositionAt(float x, float y, int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+		int col = getCellIndexAt(x, itemWidthPx, itemMarginPx);
+		int row = getCellIndexAt(y, itemHeightPx, itemMarginPx);
+		if (col < 0 || row < 0) {
+			return -1;
+		}
+
+		int cols = gridLayout.cols;
+		int rows = gridLayout.rows;
+		int position;
+		if (cols > 0) {
+			position = col < cols ? row * cols + col : -1;
+		} else if (rows > 0) {
+			position = row < rows ? col * rows + row : -1;
+		} else {
+			throw new IllegalArgumentException("one of cols or rows attribute must be 0, both cannot be set");
+		}
+
+		return position < itemCount ? position : -1;
+	}
+
+	/**
+	 * @return the index of the column (or row) whose item span contains v, or -1 if v falls in a margin
+	 */
+	private static int getCellIndexAt(float v, int itemSizePx, int itemMarginPx) {
+		float offset = v - itemMarginPx;
+		if (offset < 0) {
+			return -1;
+		}
+
+		int pitch = itemSizePx + itemMarginPx;
+		int index = (int) (offset / pitch);
+
+		// item rects are inclusive of their far edge
+		float offsetInCell = offset - index * pitch;
+		if (offsetInCell > itemSizePx) {
+			return -1;
+		}
+		return index;
+	}
+}
@@ -0,0 +1,269 @@
+package org.zakariya.flyoutmenu;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * Caches rasterized MenuItem renderings in a single shared bitmap. Each adapter position has two cells,
+ * one for the item's unselected appearance and one for its selected appearance. Cells are rendered lazily
+ * into a slot of the atlas the first time they're drawn, and are then blitted until the atlas is invalidated.
+ * <p>
+ * When a menu has more cells than the atlas has slots, slots are recycled: a cell which wasn't drawn in the
+ * current frame, such as one belonging to an item scrolled out of view, gives up its slot to the cell being drawn.
+ */
+class MenuItemAtlas {
+
+	// keep the atlas within the texture size limits of older GPUs
+	static final int MAX_ATLAS_SIZE_PX = 2048;
+
+	private static final int CELLS_PER_ITEM = 2;
+	private static final int NONE = -1;
+
+	private Bitmap bitmap;
+	private Canvas atlasCanvas = new Canvas();
+	private Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	private Rect srcRect = new Rect();
+	private RectF dstRect = new RectF();
+
+	private int itemCount;
+	private int cellWidth;
+	private int cellHeight;
+	private int columns;
+	private int capacity;
+
+	// cellSlots maps a cell to the slot holding its rendering, slotCells maps a slot back to its cell
+	private int[] cellSlots;
+	private int[] slotCells;
+	private int[] slotFrames;
+	private int frame;
+	private int clockHand;
+
+	/**
+	 * Size the atlas for a given number of items of a given size. While every item is in view the atlas holds
+	 * both cells of each item. When only some are, as in a scrolling menu, each item in view draws one of its
+	 * cells per frame, so the atlas only holds a slot for each, and items scrolled out of view give theirs up.
+	 * This is a no-op if the atlas is already configured for these dimensions and about the right size, so it
+	 * is cheap to call on every layout pass.
+	 *
+	 * @param itemCount        the number of items in the adapter
+	 * @param visibleItemCount the most items which can be in view at once
+	 * @param cellWidth        the width in pixels of an item
+	 * @param cellHeight       the height in pixels of an item
+	 */
+	void configure(int itemCount, int visibleItemCount, int cellWidth, int cellHeight) {
+		int cellCount = itemCount * CELLS_PER_ITEM;
+		int slotCount = visibleItemCount < itemCount ? visibleItemCount : cellCount;
+		if (cellWidth > 0 && cellHeight > 0) {
+			slotCount = Math.min(slotCount, (MAX_ATLAS_SIZE_PX / cellWidth) * (MAX_ATLAS_SIZE_PX / cellHeight));
+		}
+
+		// a bitmap with room to spare is kept, e.g. when items were removed, unless it's twice the size needed
+		if (bitmap != null && cellWidth == this.cellWidth && cellHeight == this.cellHeight && slotCount <= capacity && slotCount * 2 > capacity) {
+			this.itemCount = itemCount;
+			if (cellSlots.length < cellCount) {
+				int previousLength = cellSlots.length;
+				cellSlots = Arrays.copyOf(cellSlots, Math.max(cellCount, previousLength + previousLength / 2));
+				Arrays.fill(cellSlots, previousLength, cellSlots.length, NONE);
+			}
+			return;
+		}
+
+		release();
+
+		this.itemCount = itemCount;
+		this.cellWidth = cellWidth;
+		this.cellHeight = cellHeight;
+
+		if (slotCount <= 0 || cellWidth <= 0 || cellHeight <= 0 || cellWidth > MAX_ATLAS_SIZE_PX || cellHeight > MAX_ATLAS_SIZE_PX) {
+			return;
+		}
+
+		columns = Math.min(slotCount, MAX_ATLAS_SIZE_PX / cellWidth);
+		int rows = (int) Math.ceil((float) slotCount / (float) columns);
+		capacity = columns * rows;
+
+		bitmap = Bitmap.createBitmap(columns * cellWidth, rows * cellHeight, Bitmap.Config.ARGB_8888);
+		bitmap.eraseColor(0x0);
+		atlasCanvas.setBitmap(bitmap);
+
+		cellSlots = new int[cellCount];
+		slotCells = new int[capacity];
+		slotFrames = new int[capacity];
+		invalidate();
+	}
+
+	/**
+	 * Mark all cells as stale, so they will be re-rendered the next time they're drawn
+	 */
+	void invalidate() {
+		if (bitmap != null) {
+			Arrays.fill(cellSlots, NONE);
+			Arrays.fill(slotCells, NONE);
+		}
+	}
+
+	/**
+	 * Mark the cells belonging to a single adapter position as stale
+	 *
+	 * @param position the adapter position of the item whose rendering changed
+	 */
+	void invalidate(int position) {
+		for (int state = 0; state < CELLS_PER_ITEM; state++) {
+			releaseCell(position * CELLS_PER_ITEM + state);
+		}
+	}
+
+	/**
+	 * Mark the cells of all items from a given adapter position onwards as stale, e.g. when items were
+	 * inserted or removed and those following them shifted position
+	 *
+	 * @param position the adapter position of the first item whose cells are stale
+	 */
+	void invalidateFrom(int position) {
+		if (bitmap != null) {
+			for (int cell = Math.max(position * CELLS_PER_ITEM, 0); cell < cellSlots.length; cell++) {
+				releaseCell(cell);
+			}
+		}
+	}
+
+	/**
+	 * Free the atlas bitmap
+	 */
+	void release() {
+		if (bitmap != null) {
+			atlasCanvas.setBitmap(null);
+			bitmap.recycle();
+			bitmap = null;
+		}
+		cellSlots = null;
+		slotCells = null;
+		slotFrames = null;
+		itemCount = 0;
+		capacity = 0;
+		columns = 0;
+		clockHand = 0;
+	}
+
+	/**
+	 * Mark the start of a frame. Slots whose cells are drawn from here on are kept, the rest may be recycled.
+	 */
+	void beginFrame() {
+		frame++;
+	}
+
+	/**
+	 * Draw a MenuItem from the atlas, rendering it into a slot first if needed.
+	 *
+	 * @param canvas   the canvas to draw into, translated such that the item's origin is at 0,0
+	 * @param item     the item to draw
+	 * @param position the item's adapter position
+	 * @param bounds   the item's bounds in its own coordinate space
+	 * @param selected if true, the item's selected appearance is drawn
+	 * @return true if the item was drawn, false if it doesn't fit in the atlas and must be drawn directly
+	 */
+	boolean draw(Canvas canvas, FlyoutMenuView.MenuItem item, int position, RectF bounds, boolean selected) {
+		if (!render(item, position, bounds, selected)) {
+			return false;
+		}
+
+		dstRect.left = bounds.left;
+		dstRect.top = bounds.top;
+		dstRect.right = bounds.left + srcRect.width();
+		dstRect.bottom = bounds.top + srcRect.height();
+		canvas.drawBitmap(bitmap, srcRect, dstRect, paint);
+		return true;
+	}
+
+	/**
+	 * Render a MenuItem into a slot of the atlas if it isn't already, and point srcRect at it. Rendering items
+	 * before the menu opens means the frames which first show them don't modify the atlas bitmap, which would
+	 * then have to be uploaded to the GPU again.
+	 *
+	 * @param item     the item to render
+	 * @param position the item's adapter position
+	 * @param bounds   the item's bounds in its own coordinate space
+	 * @param selected if true, the item's selected appearance is rendered
+	 * @return true if the item is in the atlas, false if it doesn't fit, or every slot is in use this frame
+	 */
+	boolean render(FlyoutMenuView.MenuItem item, int position, RectF bounds, boolean selected) {
+		int cell = position * CELLS_PER_ITEM + (selected ? 1 : 0);
+		if (bitmap == null || position < 0 || position >= itemCount || bounds.width() > cellWidth || bounds.height() > cellHeight) {
+			return false;
+		}
+
+		int slot = cellSlots[cell];
+		boolean rendered = slot != NONE;
+		if (!rendered) {
+			slot = acquireSlot();
+			if (slot == NONE) {
+				// every slot is already in use this frame
+				return false;
+			}
+			cellSlots[cell] = slot;
+			slotCells[slot] = cell;
+		}
+		slotFrames[slot] = frame;
+
+		int cellLeft = (slot % columns) * cellWidth;
+		int cellTop = (slot / columns) * cellHeight;
+		srcRect.left = cellLeft;
+		srcRect.top = cellTop;
+		srcRect.right = cellLeft + (int) Math.ceil(bounds.width());
+		srcRect.bottom = cellTop + (int) Math.ceil(bounds.height());
+
+		if (!rendered) {
+			atlasCanvas.save();
+			atlasCanvas.clipRect(srcRect);
+			atlasCanvas.drawColor(0x0, PorterDuff.Mode.CLEAR);
+			atlasCanvas.translate(cellLeft, cellTop);
+			item.onDraw(atlasCanvas, bounds, selected ? 1 : 0);
+			atlasCanvas.restore();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Find a slot for a cell, preferring free slots and otherwise taking one from a cell which hasn't been drawn
+	 * in the current frame. The clock hand resumes where it left off, so recycling is amortized constant-time.
+	 *
+	 * @return a slot, or NONE if every slot was drawn in the current frame
+	 */
+	private int acquireSlot() {
+		for (int i = 0; i < capacity; i++) {
+			int slot = clockHand;
+			clockHand = (clockHand + 1) % capacity;
+
+			if (slotCells[slot] == NONE) {
+				return slot;
+			}
+
+			if (slotFrames[slot] != frame) {
+				cellSlots[slotCells[slot]] = NONE;
+				slotCells[slot] = NONE;
+				return slot;
+			}
+		}
+
+		return NONE;
+	}
+
+	private void releaseCell(int cell) {
+		if (bitmap == null || cell < 0 || cell >= cellSlots.length) {
+			return;
+		}
+
+		int slot = cellSlots[cell];
+		if (slot != NONE) {
+			slotCells[slot] = NONE;
+			cellSlots[cell] = NONE;
+		}
+	}
+}
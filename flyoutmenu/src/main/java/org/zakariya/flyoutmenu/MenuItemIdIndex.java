@@ -0,0 +1,84 @@
+package org.zakariya.flyoutmenu;
+
+import java.util.Arrays;
+
+/**
+ * Maps MenuItem ids to adapter positions with an open-addressing hash table of primitive ints, so
+ * lookups are constant-time and neither box nor allocate. The index is a snapshot of an adapter, and
+ * must be rebuilt when the adapter changes.
+ */
+class MenuItemIdIndex {
+
+	// adapter positions are never negative, so a negative position marks an empty slot
+	private static final int EMPTY = -1;
+
+	private static final int MIN_CAPACITY = 8;
+
+	private int[] ids;
+	private int[] positions;
+	private int mask;
+
+	/**
+	 * Index the ids of every item in an adapter. If two items share an id, the first is indexed.
+	 *
+	 * @param adapter the adapter to index
+	 */
+	void rebuild(FlyoutMenuView.BaseAdapter adapter) {
+		int count = adapter.getCount();
+
+		// keep the load factor at or below 0.5 so probe sequences stay short
+		int capacity = MIN_CAPACITY;
+		while (capacity < count * 2) {
+			capacity <<= 1;
+		}
+
+		if (positions == null || positions.length < capacity) {
+			ids = new int[capacity];
+			positions = new int[capacity];
+		}
+
+		mask = positions.length - 1;
+		Arrays.fill(positions, EMPTY);
+
+		for (int i = 0; i < count; i++) {
+			put(adapter.getItemId(i), i);
+		}
+	}
+
+	/**
+	 * @param id a MenuItem id
+	 * @return the adapter position of the item with this id, or -1 if the id isn't indexed
+	 */
+	int get(int id) {
+		if (positions == null) {
+			return EMPTY;
+		}
+
+		for (int slot = hash(id) & mask; positions[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (ids[slot] == id) {
+				return positions[slot];
+			}
+		}
+
+		return EMPTY;
+	}
+
+	private void put(int id, int position) {
+		int slot = hash(id) & mask;
+		while (positions[slot] != EMPTY) {
+			if (ids[slot] == id) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		ids[slot] = id;
+		positions[slot] = position;
+	}
+
+	private static int hash(int id) {
+		// ids are often sequential, so spread them across the table
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,189 @@
+package org.zakariya.flyoutmenu;
+
+/**
+ * Uniform grid over the menu's item frames, used to hit test menus whose Layout can't map a point back
+ * to an item position itself, and to find the items visible in a scrolling menu's viewport. Each bucket
+ * lists the items whose frames overlap it, so a query only tests the handful of items in the buckets it
+ * touches rather than every item in the menu.
+ */
+class MenuItemSpatialIndex {
+
+	// upper bound on buckets per axis, keeps the index small for very sparse layouts
+	private static final int MAX_BUCKETS_PER_AXIS = 64;
+
+	private float left;
+	private float top;
+	private float bucketWidth;
+	private float bucketHeight;
+	private int columns;
+	private int rows;
+
+	// bucket b's items are bucketItems[bucketStarts[b]] to bucketItems[bucketStarts[b + 1] - 1], in adapter order
+	private int[] bucketStarts;
+	private int[] bucketItems;
+	private int bucketItemCount;
+
+	/**
+	 * Index a set of item frames. The bucket size is the average item size, so for typical layouts each
+	 * bucket holds about one item.
+	 *
+	 * @param frames item frames packed as left, top, right, bottom for each item in adapter order
+	 * @param count  the number of items
+	 */
+	void build(float[] frames, int count) {
+		columns = 0;
+		rows = 0;
+		bucketItemCount = 0;
+		if (count <= 0) {
+			return;
+		}
+
+		float right = frames[2];
+		float bottom = frames[3];
+		float totalWidth = 0;
+		float totalHeight = 0;
+		left = frames[0];
+		top = frames[1];
+
+		for (int i = 0; i < count; i++) {
+			int f = i * 4;
+			left = Math.min(left, frames[f]);
+			top = Math.min(top, frames[f + 1]);
+			right = Math.max(right, frames[f + 2]);
+			bottom = Math.max(bottom, frames[f + 3]);
+			totalWidth += frames[f + 2] - frames[f];
+			totalHeight += frames[f + 3] - frames[f + 1];
+		}
+
+		float extentWidth = Math.max(right - left, 1);
+		float extentHeight = Math.max(bottom - top, 1);
+		columns = clamp((int) Math.ceil(extentWidth / Math.max(totalWidth / count, 1)), 1, MAX_BUCKETS_PER_AXIS);
+		rows = clamp((int) Math.ceil(extentHeight / Math.max(totalHeight / count, 1)), 1, MAX_BUCKETS_PER_AXIS);
+		bucketWidth = extentWidth / columns;
+		bucketHeight = extentHeight / rows;
+
+		int bucketCount = columns * rows;
+		if (bucketStarts == null || bucketStarts.length < bucketCount + 1) {
+			bucketStarts = new int[bucketCount + 1];
+		}
+
+		// first pass counts the items overlapping each bucket, the second fills them in
+		for (int b = 0; b <= bucketCount; b++) {
+			bucketStarts[b] = 0;
+		}
+
+		for (int i = 0; i < count; i++) {
+			int f = i * 4;
+			int col0 = column(frames[f]), col1 = column(frames[f + 2]);
+			int row0 = row(frames[f + 1]), row1 = row(frames[f + 3]);
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					bucketStarts[row * columns + col + 1]++;
+				}
+			}
+		}
+
+		for (int b = 0; b < bucketCount; b++) {
+			bucketStarts[b + 1] += bucketStarts[b];
+		}
+
+		bucketItemCount = bucketStarts[bucketCount];
+		if (bucketItems == null || bucketItems.length < bucketItemCount) {
+			bucketItems = new int[bucketItemCount];
+		}
+
+		for (int i = 0; i < count; i++) {
+			int f = i * 4;
+			int col0 = column(frames[f]), col1 = column(frames[f + 2]);
+			int row0 = row(frames[f + 1]), row1 = row(frames[f + 3]);
+			for (int row = row0; row <= row1; row++) {
+				for (int col = col0; col <= col1; col++) {
+					// bucketStarts[b] is used as the fill cursor, and ends up at the start of bucket b + 1
+					bucketItems[bucketStarts[row * columns + col]++] = i;
+				}
+			}
+		}
+
+		// shift the cursors back so bucketStarts[b] is once again the start of bucket b
+		for (int b = bucketCount; b > 0; b--) {
+			bucketStarts[b] = bucketStarts[b - 1];
+		}
+		bucketStarts[0] = 0;
+	}
+
+	/**
+	 * @param frames the frames the index was built from
+	 * @param x      x coordinate in the frames' coordinate space
+	 * @param y      y coordinate in the frames' coordinate space
+	 * @return the position of the first item whose frame contains the point, or -1 if there is none
+	 */
+	int get(float[] frames, float x, float y) {
+		if (columns == 0 || x < left || y < top || x > left + columns * bucketWidth || y > top + rows * bucketHeight) {
+			return -1;
+		}
+
+		int bucket = row(y) * columns + column(x);
+		for (int i = bucketStarts[bucket], end = bucketStarts[bucket + 1]; i < end; i++) {
+			int position = bucketItems[i];
+			int f = position * 4;
+			if (x >= frames[f] && x <= frames[f + 2] && y >= frames[f + 1] && y <= frames[f + 3]) {
+				return position;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Collect the items whose frames intersect a rect, visiting only the buckets the rect overlaps. An item
+	 * spanning several buckets is reported once, by the first of its buckets which the rect overlaps.
+	 *
+	 * @param frames       the frames the index was built from
+	 * @param l            left edge of the rect in the frames' coordinate space
+	 * @param t            top edge of the rect
+	 * @param r            right edge of the rect
+	 * @param b            bottom edge of the rect
+	 * @param outPositions receives the positions of the intersecting items, in no particular order. Must have room for every indexed item
+	 * @return the number of positions written to outPositions
+	 */
+	int query(float[] frames, float l, float t, float r, float b, int[] outPositions) {
+		if (columns == 0 || r < left || b < top || l > left + columns * bucketWidth || t > top + rows * bucketHeight) {
+			return 0;
+		}
+
+		int col0 = column(l), col1 = column(r);
+		int row0 = row(t), row1 = row(b);
+		int count = 0;
+
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				int bucket = row * columns + col;
+				for (int i = bucketStarts[bucket], end = bucketStarts[bucket + 1]; i < end; i++) {
+					int position = bucketItems[i];
+					int f = position * 4;
+					if (frames[f + 2] < l || frames[f] > r || frames[f + 3] < t || frames[f + 1] > b) {
+						continue;
+					}
+
+					if (Math.max(column(frames[f]), col0) == col && Math.max(row(frames[f + 1]), row0) == row) {
+						outPositions[count++] = position;
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	private int column(float x) {
+		return clamp((int) ((x - left) / bucketWidth), 0, columns - 1);
+	}
+
+	private int row(float y) {
+		return clamp((int) ((y - top) / bucketHeight), 0, rows - 1);
+	}
+
+	private static int clamp(int v, int min, int max) {
+		return Math.max(min, Math.min(v, max));
+	}
+}
@@ -0,0 +1,53 @@
+package org.zakariya.flyoutmenu;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * Process-wide cache of the shadow bitmaps used by FlyoutMenuView and its menu. Shadows are
+ * stored as ALPHA_8 masks and tinted by the paint color at draw time, so every FlyoutMenuView
+ * with the same button size and elevation shares one bitmap. Cached bitmaps are shared and
+ * must never be recycled or drawn into by their users.
+ */
+final class ShadowBitmapCache {
+
+	static final int KIND_BUTTON = 1;
+	static final int KIND_MENU = 2;
+
+	// ALPHA_8 shadows are small, this holds a few dozen distinct radius/elevation combinations
+	private static final int MAX_SIZE_BYTES = 512 * 1024;
+
+	private static final LruCache<Long, Bitmap> cache = new LruCache<Long, Bitmap>(MAX_SIZE_BYTES) {
+		@Override
+		protected int sizeOf(Long key, Bitmap bitmap) {
+			return bitmap.getByteCount();
+		}
+	};
+
+	private ShadowBitmapCache() {
+	}
+
+	/**
+	 * @param kind      one of KIND_BUTTON or KIND_MENU
+	 * @param radius    the radius in pixels of the shape casting the shadow, or 0 if it doesn't apply
+	 * @param elevation the elevation in pixels of the shape casting the shadow
+	 * @return the cached shadow bitmap, or null if none has been created
+	 */
+	static Bitmap get(int kind, int radius, int elevation) {
+		return cache.get(key(kind, radius, elevation));
+	}
+
+	/**
+	 * @param kind      one of KIND_BUTTON or KIND_MENU
+	 * @param radius    the radius in pixels of the shape casting the shadow, or 0 if it doesn't apply
+	 * @param elevation the elevation in pixels of the shape casting the shadow
+	 * @param bitmap    the shadow bitmap, which will be shared from now on
+	 */
+	static void put(int kind, int radius, int elevation, Bitmap bitmap) {
+		cache.put(key(kind, radius, elevation), bitmap);
+	}
+
+	private static long key(int kind, int radius, int elevation) {
+		return ((long) kind << 56) | ((long) (radius & 0xFFFFFFF) << 28) | (elevation & 0xFFFFFFF);
+	}
+}
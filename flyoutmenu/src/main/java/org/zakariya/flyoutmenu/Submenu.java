@@ -0,0 +1,192 @@
+package org.zakariya.flyoutmenu;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * A submenu opened from a MenuItem, drawn by the MenuOverlayView above the menu it was opened from. Submenus
+ * are built from their parent item's adapter and layout when they open, and discarded when they close.
+ * Item frames are stored packed as left, top, right, bottom in the submenu's coordinate space, as the
+ * MenuOverlayView stores those of the root menu.
+ */
+class Submenu {
+
+	final FlyoutMenuView.MenuItem parentItem;
+
+	// the position of parentItem in the menu it was opened from
+	final int parentPosition;
+
+	int itemCount;
+	FlyoutMenuView.MenuItem[] items;
+	float[] itemFrames;
+
+	// the submenu's frame, and the center of its reveal, in the MenuOverlayView's coordinate space
+	RectF rect = new RectF();
+	float revealCenterX;
+	float revealCenterY;
+	float revealRadius;
+	float transition;
+	boolean transitionChanged;
+
+	// drives transition, taken from the TransitionPool when the submenu opens and returned when it closes
+	Transition animation;
+
+	private Path shapePath = new Path();
+	private Path revealPath = new Path();
+	private RectF itemBounds = new RectF();
+	private RectF selectionBounds = new RectF();
+	private FlyoutMenuView.Size itemMeasureSize = new FlyoutMenuView.Size();
+
+	Submenu(FlyoutMenuView.MenuItem parentItem, int parentPosition) {
+		this.parentItem = parentItem;
+		this.parentPosition = parentPosition;
+	}
+
+	/**
+	 * Lay out the submenu's items, and size its rect with its first item level with its parent item. The
+	 * MenuOverlayView then moves the rect beside the menu it was opened from.
+	 *
+	 * @param flyoutMenuView the FlyoutMenuView whose item size and margins apply
+	 * @param parentItemRect the frame of the parent item in the MenuOverlayView's coordinate space
+	 */
+	void layout(FlyoutMenuView flyoutMenuView, RectF parentItemRect) {
+		FlyoutMenuView.Adapter adapter = parentItem.getSubmenuAdapter();
+		FlyoutMenuView.Layout layout = parentItem.getSubmenuLayout();
+		int itemWidth = flyoutMenuView.itemWidth;
+		int itemHeight = flyoutMenuView.itemHeight;
+		int itemMargin = flyoutMenuView.itemMargin;
+
+		itemCount = adapter != null ? adapter.getCount() : 0;
+		items = new FlyoutMenuView.MenuItem[itemCount];
+		itemFrames = new float[itemCount * 4];
+		for (int i = 0; i < itemCount; i++) {
+			items[i] = adapter.getItem(i);
+		}
+
+		FlyoutMenuView.Size size;
+		if (layout instanceof FlyoutMenuView.VariableSizeLayout) {
+			int[] itemSizes = new int[itemCount * 2];
+			for (int i = 0; i < itemCount; i++) {
+				items[i].onMeasure(itemMeasureSize, itemWidth, itemHeight);
+				itemSizes[i * 2] = Math.max(itemMeasureSize.width, 0);
+				itemSizes[i * 2 + 1] = Math.max(itemMeasureSize.height, 0);
+			}
+			FlyoutMenuView.VariableSizeLayout variableSizeLayout = (FlyoutMenuView.VariableSizeLayout) layout;
+			variableSizeLayout.layoutMeasuredItems(itemCount, itemSizes, itemMargin, itemFrames);
+			size = variableSizeLayout.getMinimumSizeForMeasuredItems(itemCount, itemSizes, itemMargin);
+		} else {
+			size = layout.getMinimumSizeForItems(itemCount, itemWidth, itemHeight, itemMargin);
+			FlyoutMenuView.BulkLayout bulkLayout = FlyoutMenuView.asBulkLayout(layout);
+			if (bulkLayout != null) {
+				bulkLayout.layoutItems(itemCount, 0, itemCount, itemWidth, itemHeight, itemMargin, itemFrames);
+			} else {
+				for (int i = 0; i < itemCount; i++) {
+					Rect itemRect = layout.getLayoutRectForItem(i, itemWidth, itemHeight, itemMargin);
+					int f = i * 4;
+					itemFrames[f] = itemRect.left;
+					itemFrames[f + 1] = itemRect.top;
+					itemFrames[f + 2] = itemRect.right;
+					itemFrames[f + 3] = itemRect.bottom;
+				}
+			}
+		}
+
+		float top = parentItemRect.top - (itemCount > 0 ? itemFrames[1] : 0);
+		rect.set(0, top, size.width, top + size.height);
+	}
+
+	/**
+	 * Build the submenu's shape, and its reveal from the center of its parent item. Call after the
+	 * MenuOverlayView has fit the submenu's rect to the screen.
+	 *
+	 * @param parentItemRect the frame of the parent item in the MenuOverlayView's coordinate space
+	 * @param cornerRadius   the corner radius of the submenu's shape
+	 */
+	void updateShape(RectF parentItemRect, float cornerRadius) {
+		shapePath.reset();
+		shapePath.addRoundRect(rect, cornerRadius, cornerRadius, Path.Direction.CW);
+
+		revealCenterX = parentItemRect.centerX();
+		revealCenterY = parentItemRect.centerY();
+		float dx = Math.max(Math.abs(rect.left - revealCenterX), Math.abs(rect.right - revealCenterX));
+		float dy = Math.max(Math.abs(rect.top - revealCenterY), Math.abs(rect.bottom - revealCenterY));
+		revealRadius = (float) Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Move the submenu along with the menu it was opened from
+	 *
+	 * @param dx horizontal distance to move the submenu
+	 * @param dy vertical distance to move the submenu
+	 */
+	void offset(float dx, float dy) {
+		rect.offset(dx, dy);
+		shapePath.offset(dx, dy);
+		revealCenterX += dx;
+		revealCenterY += dy;
+	}
+
+	/**
+	 * @param x x coordinate in the MenuOverlayView's coordinate space
+	 * @param y y coordinate in the MenuOverlayView's coordinate space
+	 * @return the position of the item under the point, or -1 if there is none
+	 */
+	int findItemPositionAt(float x, float y) {
+		float menuX = x - rect.left;
+		float menuY = y - rect.top;
+		for (int i = 0; i < itemCount; i++) {
+			int f = i * 4;
+			if (menuX >= itemFrames[f] && menuX <= itemFrames[f + 2] && menuY >= itemFrames[f + 1] && menuY <= itemFrames[f + 3]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Draw the submenu's background and items, clipped to its reveal
+	 *
+	 * @param canvas         the canvas to draw into, in the MenuOverlayView's coordinate space
+	 * @param paint          a paint to draw with
+	 * @param flyoutMenuView the FlyoutMenuView whose colors and selection apply
+	 * @param cornerRadius   the corner radius of the selection highlight
+	 */
+	void draw(Canvas canvas, Paint paint, FlyoutMenuView flyoutMenuView, float cornerRadius) {
+		canvas.save();
+		canvas.clipPath(shapePath);
+
+		revealPath.reset();
+		revealPath.addCircle(revealCenterX, revealCenterY, revealRadius * transition, Path.Direction.CW);
+		canvas.clipPath(revealPath);
+
+		paint.setColor(flyoutMenuView.menuBackgroundColor);
+		canvas.drawRect(rect, paint);
+		canvas.translate(rect.left, rect.top);
+
+		float selectionOutset = flyoutMenuView.itemMargin / 2;
+		for (int i = 0; i < itemCount; i++) {
+			int f = i * 4;
+			FlyoutMenuView.MenuItem item = items[i];
+			canvas.save();
+			canvas.translate(itemFrames[f], itemFrames[f + 1]);
+			itemBounds.set(0, 0, itemFrames[f + 2] - itemFrames[f], itemFrames[f + 3] - itemFrames[f + 1]);
+
+			boolean selected = item == flyoutMenuView.selectedMenuItem;
+			if (selected && Color.alpha(flyoutMenuView.selectedItemBackgroundColor) > 0) {
+				selectionBounds.set(itemBounds);
+				selectionBounds.inset(-selectionOutset, -selectionOutset);
+				paint.setColor(flyoutMenuView.selectedItemBackgroundColor);
+				canvas.drawRoundRect(selectionBounds, cornerRadius, cornerRadius, paint);
+			}
+
+			item.onDraw(canvas, itemBounds, selected ? 1 : 0);
+			canvas.restore();
+		}
+
+		canvas.restore();
+	}
+}
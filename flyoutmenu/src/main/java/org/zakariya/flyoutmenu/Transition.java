@@ -0,0 +1,299 @@
+package org.zakariya.flyoutmenu;
+
+import android.animation.TimeInterpolator;
+
+/**
+ * A value animated from one end point to another by the FrameTicker. Unlike a ValueAnimator, a Transition
+ * neither boxes its value nor dispatches to its listener on its own schedule; every running Transition is
+ * advanced in the same pass once per frame, and each listener is told once the pass is complete, so it can
+ * invalidate once however many of its transitions changed.
+ * <p>
+ * A transition either tweens over a fixed duration with an interpolator, or is pulled towards its end value
+ * by a damped spring. A spring keeps its velocity when retargeted, so reversing it part way carries on
+ * smoothly from its current motion rather than restarting, and it may overshoot its end value if
+ * underdamped, unless its overshoot is clamped.
+ * <p>
+ * Durations, delays and spring responses are scaled by the animator duration scale from the developer options,
+ * as a ValueAnimator's would be. When animations are turned off a transition jumps to its end value on its next frame.
+ */
+class Transition {
+
+	// the spring is integrated in steps no longer than this for stability, and frames after a stall are capped
+	private static final float SPRING_STEP_SECONDS = 0.004f;
+	private static final float SPRING_MAX_FRAME_SECONDS = 0.1f;
+
+	// a spring comes to rest within this distance of its end value, moving slower than this per second
+	private static final float SPRING_REST_DISTANCE = 0.002f;
+	private static final float SPRING_REST_VELOCITY = 0.02f;
+
+	interface Listener {
+		/**
+		 * Called when the transition's value changes during a frame's pass. Listeners should record what
+		 * changed here, and invalidate in onTransitionsAdvanced.
+		 */
+		void onTransitionUpdate(Transition transition);
+
+		/**
+		 * Called when the transition reaches its end value. Not called if the transition is canceled or restarted first.
+		 */
+		void onTransitionEnd(Transition transition);
+
+		/**
+		 * Called once per frame, after every running transition has advanced, if any of this listener's transitions changed
+		 */
+		void onTransitionsAdvanced();
+	}
+
+	private TimeInterpolator interpolator;
+	private Listener listener;
+
+	private float value;
+	private float from;
+	private float to;
+	private long durationNanos;
+	private long delayNanos;
+
+	// the frame time of the first frame after start, or -1 before it
+	private long startTimeNanos = -1;
+	private boolean running;
+
+	private boolean spring;
+	private float velocity;
+	private float stiffness;
+	private float damping;
+	private float springTo;
+	private long lastFrameTimeNanos;
+	private boolean overshootClamped;
+
+	// the animator duration scale when the transition was started or retargeted
+	private float durationScale = 1;
+
+	Transition(TimeInterpolator interpolator, Listener listener) {
+		this.interpolator = interpolator;
+		this.listener = listener;
+	}
+
+	/**
+	 * Start animating from one value to another, abandoning any animation in progress
+	 *
+	 * @param from           the starting value
+	 * @param to             the end value
+	 * @param durationMillis the animation's duration
+	 * @param delayMillis    the delay before the animation starts, during which the value stays at from
+	 */
+	void start(float from, float to, long durationMillis, long delayMillis) {
+		this.from = from;
+		this.to = to;
+		this.value = from;
+		durationScale = FrameTicker.getDurationScale();
+		this.durationNanos = (long) (durationMillis * 1000000L * durationScale);
+		this.delayNanos = (long) (delayMillis * 1000000L * durationScale);
+		startTimeNanos = -1;
+		spring = false;
+		velocity = 0;
+		if (!running) {
+			running = true;
+			FrameTicker.add(this);
+		}
+	}
+
+	/**
+	 * Set the spring used by springTo. The spring's stiffness and damping are derived from a response, the
+	 * period it would oscillate with if undamped, and a damping ratio.
+	 *
+	 * @param responseMillis the spring's undamped period, roughly how long it takes to cover its full distance
+	 * @param dampingRatio   1 for critical damping, less than 1 to overshoot and settle, greater than 1 to approach slowly
+	 */
+	void setSpring(long responseMillis, float dampingRatio) {
+		float angularFrequency = (float) (2 * Math.PI / (responseMillis / 1000f));
+		stiffness = angularFrequency * angularFrequency;
+		damping = 2 * dampingRatio * angularFrequency;
+	}
+
+	/**
+	 * @param overshootClamped if true, a spring comes to rest as soon as it reaches its end value, rather than
+	 *                         overshooting and settling back. An underdamped spring still arrives sooner than a
+	 *                         critically damped one.
+	 */
+	void setOvershootClamped(boolean overshootClamped) {
+		this.overshootClamped = overshootClamped;
+	}
+
+	/**
+	 * Pull the value towards a new end value with the spring set by setSpring. If the transition is already a
+	 * running spring it keeps its current value and velocity, otherwise it starts from its current value and velocity.
+	 *
+	 * @param to          the end value
+	 * @param delayMillis the delay before the spring is retargeted, during which it continues towards its previous end value
+	 */
+	void springTo(float to, long delayMillis) {
+		boolean springing = spring && running;
+		if (!springing) {
+			// a settled spring holds its end value until it's next pulled elsewhere
+			this.to = value;
+		}
+
+		spring = true;
+		springTo = to;
+		durationScale = FrameTicker.getDurationScale();
+		delayNanos = (long) (delayMillis * 1000000L * durationScale);
+
+		// a running spring carries on from its last frame, rather than losing a frame to restarting
+		startTimeNanos = springing ? lastFrameTimeNanos : -1;
+		if (!running) {
+			running = true;
+			FrameTicker.add(this);
+		}
+	}
+
+	/**
+	 * Set the value, stopping the transition. Used to sync the transition with a value changed elsewhere before starting it.
+	 */
+	void setValue(float value) {
+		cancel();
+		this.value = value;
+		this.to = value;
+		velocity = 0;
+	}
+
+	/**
+	 * @return the value's rate of change in units per second, only tracked for springs
+	 */
+	float getVelocity() {
+		return velocity;
+	}
+
+	/**
+	 * Set the value's rate of change, for instance to hand off the velocity of a gesture to a spring
+	 *
+	 * @param velocity rate of change in units per second
+	 */
+	void setVelocity(float velocity) {
+		this.velocity = velocity;
+	}
+
+	/**
+	 * Stop the transition where it is, without notifying the listener
+	 */
+	void cancel() {
+		if (running) {
+			running = false;
+			FrameTicker.remove(this);
+		}
+	}
+
+	boolean isRunning() {
+		return running;
+	}
+
+	float getValue() {
+		return value;
+	}
+
+	/**
+	 * @return the value the transition is heading towards, or came to rest at
+	 */
+	float getEndValue() {
+		return spring ? springTo : to;
+	}
+
+	Listener getListener() {
+		return listener;
+	}
+
+	void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	void setInterpolator(TimeInterpolator interpolator) {
+		this.interpolator = interpolator;
+	}
+
+	/**
+	 * Advance the transition to a frame, called by the FrameTicker
+	 *
+	 * @param frameTimeNanos the frame's time, as passed to Choreographer.FrameCallback
+	 * @return true if the value changed
+	 */
+	boolean advance(long frameTimeNanos) {
+		if (spring) {
+			return advanceSpring(frameTimeNanos);
+		}
+
+		if (startTimeNanos < 0) {
+			startTimeNanos = frameTimeNanos;
+		}
+
+		long elapsed = frameTimeNanos - startTimeNanos - delayNanos;
+		if (elapsed < 0) {
+			return false;
+		}
+
+		float fraction = durationNanos > 0 ? Math.min((float) elapsed / (float) durationNanos, 1f) : 1f;
+		value = from + (to - from) * interpolator.getInterpolation(fraction);
+		if (fraction >= 1f) {
+			value = to;
+			running = false;
+		}
+
+		return true;
+	}
+
+	private boolean advanceSpring(long frameTimeNanos) {
+		if (durationScale <= 0) {
+			// animations are off, so the spring settles at once
+			to = springTo;
+			value = springTo;
+			velocity = 0;
+			running = false;
+			return true;
+		}
+
+		if (startTimeNanos < 0) {
+			// the first frame has no previous frame to measure from, so the spring starts moving on the next
+			startTimeNanos = frameTimeNanos;
+			lastFrameTimeNanos = frameTimeNanos;
+			return false;
+		}
+
+		// during the delay the spring continues towards its previous end value
+		boolean headingForEnd = to == springTo;
+		if (!headingForEnd && frameTimeNanos - startTimeNanos >= delayNanos) {
+			to = springTo;
+			headingForEnd = true;
+		}
+
+		// the spring runs in scaled time, which scales its response as a ValueAnimator's duration would be
+		float seconds = Math.min((frameTimeNanos - lastFrameTimeNanos) / 1e9f / durationScale, SPRING_MAX_FRAME_SECONDS);
+		lastFrameTimeNanos = frameTimeNanos;
+
+		// semi-implicit euler, in steps short enough to be stable for any reasonable stiffness
+		float previousValue = value;
+		int steps = (int) Math.ceil(seconds / SPRING_STEP_SECONDS);
+		if (steps > 0) {
+			float step = seconds / steps;
+			for (int i = 0; i < steps; i++) {
+				float acceleration = -stiffness * (value - to) - damping * velocity;
+				velocity += acceleration * step;
+				value += velocity * step;
+			}
+		}
+
+		// a clamped spring stops on reaching or crossing its end value
+		boolean reachedEnd = overshootClamped && (value - to) * (previousValue - to) <= 0;
+		if (reachedEnd || (Math.abs(value - to) < SPRING_REST_DISTANCE && Math.abs(velocity) < SPRING_REST_VELOCITY)) {
+			value = to;
+			velocity = 0;
+
+			// at rest, but waiting out the delay before heading for the new end value
+			if (!headingForEnd) {
+				return value != previousValue;
+			}
+
+			running = false;
+			return true;
+		}
+
+		return value != previousValue;
+	}
+}
@@ -0,0 +1,52 @@
+package org.zakariya.flyoutmenu;
+
+import android.animation.TimeInterpolator;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of Transitions shared by every FlyoutMenuView. Short-lived transitions, such as those of submenus
+ * opened and closed as the user drags across a menu, are taken from here and returned when done, rather
+ * than allocated each time. Transitions are only ever used on the UI thread, so the pool is not synchronized.
+ */
+final class TransitionPool {
+
+	// more than a few submenus are rarely open at once
+	private static final int MAX_POOL_SIZE = 8;
+
+	private static final ArrayList<Transition> pool = new ArrayList<>(MAX_POOL_SIZE);
+
+	private TransitionPool() {
+	}
+
+	/**
+	 * Take a transition from the pool, or create one if the pool is empty
+	 *
+	 * @param interpolator the transition's interpolator
+	 * @param listener     notified as the transition runs
+	 * @return a transition, ready to be started
+	 */
+	static Transition acquire(TimeInterpolator interpolator, Transition.Listener listener) {
+		if (pool.isEmpty()) {
+			return new Transition(interpolator, listener);
+		}
+
+		Transition transition = pool.remove(pool.size() - 1);
+		transition.setInterpolator(interpolator);
+		transition.setListener(listener);
+		return transition;
+	}
+
+	/**
+	 * Cancel a transition if it's running, and return it to the pool. The caller must not use it afterwards.
+	 *
+	 * @param transition a transition obtained from acquire
+	 */
+	static void release(Transition transition) {
+		transition.cancel();
+		transition.setListener(null);
+		if (pool.size() < MAX_POOL_SIZE) {
+			pool.add(transition);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package org.zakariya.flyoutmenu;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that AsyncAdapter keeps loaded items at the right positions, and discards loads made stale,
+ * when items are inserted, removed or changed while loads are in flight. Loads are queued by the executor
+ * and run on the test thread when the test chooses, and their results are delivered by idling the main looper.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AsyncAdapterTest {
+
+	private List<Integer> data;
+	private List<Runnable> pendingLoads;
+	private TestAsyncAdapter adapter;
+	private List<String> notifications;
+	private FlyoutMenuView flyoutMenuView;
+
+	@Before
+	public void setUp() {
+		ShadowLooper.pauseMainLooper();
+
+		data = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			data.add(i);
+		}
+
+		pendingLoads = new ArrayList<>();
+		adapter = new TestAsyncAdapter(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				pendingLoads.add(command);
+			}
+		});
+
+		notifications = new ArrayList<>();
+		adapter.registerObserver(new FlyoutMenuView.AdapterObserver() {
+			@Override
+			public void onChanged() {
+				notifications.add("changed");
+			}
+
+			@Override
+			public void onItemRangeChanged(int positionStart, int itemCount) {
+				notifications.add("changed " + positionStart + " " + itemCount);
+			}
+
+			@Override
+			public void onItemRangeInserted(int positionStart, int itemCount) {
+				notifications.add("inserted " + positionStart + " " + itemCount);
+			}
+
+			@Override
+			public void onItemRangeRemoved(int positionStart, int itemCount) {
+				notifications.add("removed " + positionStart + " " + itemCount);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		if (flyoutMenuView != null && flyoutMenuView.selectionAnimation != null) {
+			flyoutMenuView.selectionAnimation.cancel();
+		}
+	}
+
+	@Test
+	public void getItemLoadsOnceAndNotifies() {
+		FlyoutMenuView.MenuItem placeholder = adapter.getItem(2);
+		assertTrue(placeholder instanceof FlyoutMenuView.PlaceholderMenuItem);
+		assertSame(placeholder, adapter.getItem(2));
+		assertEquals(1, pendingLoads.size());
+
+		runLoads();
+
+		assertTrue(adapter.isItemLoaded(2));
+		assertEquals(2, adapter.getItem(2).getId());
+		assertEquals(1, notifications.size());
+		assertEquals("changed 2 1", notifications.get(0));
+		assertTrue(pendingLoads.isEmpty());
+	}
+
+	@Test
+	public void insertShiftsLoadedItemsAndDiscardsInFlightLoads() {
+		load(0, 1);
+		adapter.getItem(3);
+
+		// the load of position 3 hasn't run when the item is inserted, and would load the wrong item if it did
+		data.add(1, 100);
+		adapter.notifyItemInserted(1);
+		runLoads();
+
+		assertTrue(adapter.isItemLoaded(0));
+		assertFalse(adapter.isItemLoaded(1));
+		assertTrue(adapter.isItemLoaded(2));
+		assertFalse(adapter.isItemLoaded(3));
+		assertEquals(1, adapter.getItem(2).getId());
+
+		// the items after the insertion are loaded again when next asked for
+		load(3);
+		assertEquals(2, adapter.getItem(3).getId());
+	}
+
+	@Test
+	public void removeShiftsLoadedItemsAndDiscardsInFlightLoads() {
+		load(0, 3, 4);
+		adapter.getItem(2);
+
+		// the load of position 2 has run, but its result arrives after the removal
+		executeLoads();
+		data.remove(1);
+		adapter.notifyItemRemoved(1);
+		ShadowLooper.idleMainLooper();
+
+		assertEquals(4, adapter.getCount());
+		assertTrue(adapter.isItemLoaded(0));
+		assertFalse(adapter.isItemLoaded(1));
+		assertTrue(adapter.isItemLoaded(2));
+		assertTrue(adapter.isItemLoaded(3));
+		assertEquals(3, adapter.getItem(2).getId());
+		assertEquals(4, adapter.getItem(3).getId());
+	}
+
+	@Test
+	public void changeReloadsItemAndDiscardsInFlightLoad() {
+		load(1);
+		adapter.getItem(2);
+
+		// the load of position 2 read the old item, and its result arrives after the change
+		executeLoads();
+		data.set(1, 101);
+		data.set(2, 102);
+		adapter.notifyItemRangeChanged(1, 2);
+		ShadowLooper.idleMainLooper();
+		assertFalse(adapter.isItemLoaded(1));
+		assertFalse(adapter.isItemLoaded(2));
+
+		load(1, 2);
+		assertEquals(101, adapter.getItem(1).getId());
+		assertEquals(102, adapter.getItem(2).getId());
+	}
+
+	@Test
+	public void dataSetChangeDiscardsEverything() {
+		load(0, 1);
+		adapter.getItem(2);
+
+		adapter.notifyDataSetChanged();
+		runLoads();
+
+		for (int i = 0; i < data.size(); i++) {
+			assertFalse(adapter.isItemLoaded(i));
+		}
+	}
+
+	@Test
+	public void selectionSurvivesUnloadingItems() {
+		FlyoutMenuView.MenuItem selected = selectItem(2);
+
+		// every item is unloaded, so the selection can't be found by id but may still be in the adapter
+		adapter.notifyDataSetChanged();
+		assertSame(selected, flyoutMenuView.getSelectedMenuItem());
+
+		data.remove(0);
+		adapter.notifyItemRemoved(0);
+		assertSame(selected, flyoutMenuView.getSelectedMenuItem());
+	}
+
+	@Test
+	public void selectionIsClearedWhenItsItemIsRemoved() {
+		selectItem(2);
+
+		// every remaining item is loaded, so the selected item's id is known to be gone
+		data.remove(2);
+		adapter.notifyItemRemoved(2);
+		assertNull(flyoutMenuView.getSelectedMenuItem());
+	}
+
+	/**
+	 * Load every item of a stable-id adapter, hand it to a FlyoutMenuView, and select the item at a given position
+	 */
+	private FlyoutMenuView.MenuItem selectItem(int position) {
+		adapter.setHasStableIds(true);
+		load(0, 1, 2, 3, 4);
+
+		flyoutMenuView = new FlyoutMenuView(RuntimeEnvironment.application);
+		flyoutMenuView.setAdapter(adapter);
+
+		// the view only observes its adapter while attached to a window, which this one never is
+		adapter.registerObserver(flyoutMenuView.adapterObserver);
+
+		FlyoutMenuView.MenuItem item = adapter.getItem(position);
+		flyoutMenuView.setSelectedMenuItem(item);
+		assertSame(item, flyoutMenuView.getSelectedMenuItem());
+		return item;
+	}
+
+	/**
+	 * Request the items at the given positions, and run their loads to completion
+	 */
+	private void load(int... positions) {
+		for (int position : positions) {
+			adapter.getItem(position);
+		}
+		runLoads();
+		for (int position : positions) {
+			assertTrue(adapter.isItemLoaded(position));
+		}
+	}
+
+	/**
+	 * Run every queued load, then deliver the results on the main looper
+	 */
+	private void runLoads() {
+		executeLoads();
+		ShadowLooper.idleMainLooper();
+	}
+
+	/**
+	 * Run every queued load, leaving their results posted to the main looper
+	 */
+	private void executeLoads() {
+		List<Runnable> loads = new ArrayList<>(pendingLoads);
+		pendingLoads.clear();
+		for (Runnable load : loads) {
+			load.run();
+		}
+	}
+
+	private class TestAsyncAdapter extends FlyoutMenuView.AsyncAdapter {
+
+		TestAsyncAdapter(Executor executor) {
+			super(executor);
+		}
+
+		@Override
+		public int getCount() {
+			return data.size();
+		}
+
+		@Override
+		protected FlyoutMenuView.MenuItem onLoadItem(int position) {
+			return new FlyoutMenuView.MenuItem(data.get(position));
+		}
+	}
+}
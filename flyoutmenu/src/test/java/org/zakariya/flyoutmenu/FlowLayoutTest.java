@@ -0,0 +1,83 @@
+package org.zakariya.flyoutmenu;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that FlowLayout wraps measured items into rows no wider than its maximum, vertically centers
+ * them in their row, and reports the size of the rows it laid out
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FlowLayoutTest {
+
+	private static final int MAX_ROW_WIDTH = 100;
+	private static final int ITEM_MARGIN = 10;
+
+	// width, height of each item
+	private static final int[] ITEM_SIZES = {
+			30, 20,
+			40, 10,
+			20, 30,
+			50, 20,
+			90, 40,
+			120, 10,
+			10, 10
+	};
+
+	private static final int ITEM_COUNT = ITEM_SIZES.length / 2;
+
+	private FlyoutMenuView.FlowLayout layout;
+	private float[] frames;
+
+	@Before
+	public void setUp() {
+		layout = new FlyoutMenuView.FlowLayout(MAX_ROW_WIDTH);
+		frames = new float[ITEM_COUNT * 4];
+		layout.layoutMeasuredItems(ITEM_COUNT, ITEM_SIZES, ITEM_MARGIN, frames);
+	}
+
+	@Test
+	public void itemsWrapWhenTheRowIsFull() {
+		// the first two items exactly fill the first row, margins included
+		assertFrame(0, 10, 10, 40, 30);
+		assertFrame(1, 50, 15, 90, 25);
+
+		// the row's height is its tallest item's, and shorter items are centered in it
+		assertFrame(2, 10, 40, 30, 70);
+		assertFrame(3, 40, 45, 90, 65);
+	}
+
+	@Test
+	public void itemsWiderThanARowGetARowOfTheirOwn() {
+		// item 4 starts a row even though its trailing margin overhangs it, and item 5 is wider than a row
+		assertFrame(4, 10, 80, 100, 120);
+		assertFrame(5, 10, 130, 130, 140);
+		assertFrame(6, 10, 150, 20, 160);
+	}
+
+	@Test
+	public void minimumSizeCoversEveryRow() {
+		FlyoutMenuView.Size size = layout.getMinimumSizeForMeasuredItems(ITEM_COUNT, ITEM_SIZES, ITEM_MARGIN);
+		assertEquals(140, size.width);
+		assertEquals(170, size.height);
+
+		// a single row is only as wide as its items
+		size = layout.getMinimumSizeForMeasuredItems(2, ITEM_SIZES, ITEM_MARGIN);
+		assertEquals(100, size.width);
+		assertEquals(40, size.height);
+	}
+
+	private void assertFrame(int position, float left, float top, float right, float bottom) {
+		int f = position * 4;
+		assertEquals(left, frames[f], 0);
+		assertEquals(top, frames[f + 1], 0);
+		assertEquals(right, frames[f + 2], 0);
+		assertEquals(bottom, frames[f + 3], 0);
+	}
+}
@@ -0,0 +1,335 @@
+package org.zakariya.flyoutmenu;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Verifies that animating and drawing FlyoutMenuView, its MenuOverlayView and MenuRevealView allocates
+ * nothing in steady state, in the hardware reveal and default bitmap shadow modes. Frames are driven
+ * through the FrameTicker and the menu's real transitions, and drawn into a Canvas which discards all
+ * drawing, so only allocations made by the library itself are measured, not those of Robolectric's
+ * graphics shadows. The clip path reveal mode isn't covered, since it rebuilds a Path every frame and
+ * Robolectric's Path allocates on every mutation.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FlyoutMenuViewAllocationTest {
+
+	private static final int ITEM_COUNT = 64;
+	private static final long FRAME_NANOS = 16000000L;
+
+	// a transition which hasn't settled after this many frames has stalled
+	private static final int MAX_FRAMES = 500;
+
+	// the smallest object on a 64-bit VM is 16 bytes, so anything below this means no frame allocated
+	private static final long MAX_BYTES_PER_FRAME = 16;
+
+	private com.sun.management.ThreadMXBean threadMXBean;
+	private FlyoutMenuView flyoutMenuView;
+	private Canvas canvas;
+	private List<TestMenuItem> items;
+	private long frameTimeNanos;
+	private int frames;
+
+	@Before
+	public void setUp() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		threadMXBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+		threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+		// frames are ticked by the test, so the FrameTicker's Choreographer callback is held back
+		ShadowLooper.pauseMainLooper();
+
+		Context context = RuntimeEnvironment.application;
+
+		items = new ArrayList<>();
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			items.add(new TestMenuItem(i));
+		}
+
+		flyoutMenuView = new FlyoutMenuView(context);
+		flyoutMenuView.setRevealMode(FlyoutMenuView.REVEAL_MODE_HARDWARE);
+		flyoutMenuView.setLayout(new FlyoutMenuView.GridLayout(8, FlyoutMenuView.GridLayout.UNSPECIFIED));
+		flyoutMenuView.setAdapter(new FlyoutMenuView.ArrayAdapter<>(items));
+
+		// the menu overlay is added to the root view, so give the button a full-screen one
+		FrameLayout root = new FrameLayout(context);
+		root.addView(flyoutMenuView);
+		root.layout(0, 0, 1080, 1920);
+		flyoutMenuView.layout(0, 0, 200, 200);
+
+		canvas = new InertCanvas();
+		frameTimeNanos = 1000000000L;
+	}
+
+	@After
+	public void tearDown() {
+		// transitions are driven by the process-wide FrameTicker, so none may outlive the test
+		if (flyoutMenuView.menuAnimation != null) {
+			flyoutMenuView.menuAnimation.cancel();
+		}
+		if (flyoutMenuView.selectionAnimation != null) {
+			flyoutMenuView.selectionAnimation.cancel();
+		}
+	}
+
+	@Test
+	public void openAnimationDoesNotAllocate() {
+		assertOpenAnimationAllocationFree();
+	}
+
+	@Test
+	public void openAnimationWithDisplayListDoesNotAllocate() {
+		flyoutMenuView.setMenuDisplayListEnabled(true);
+		assertOpenAnimationAllocationFree();
+	}
+
+	@Test
+	public void openAnimationWithItemCacheDoesNotAllocate() {
+		flyoutMenuView.setItemCacheEnabled(true);
+		assertOpenAnimationAllocationFree();
+	}
+
+	@Test
+	public void selectionAnimationDoesNotAllocate() {
+		flyoutMenuView.setMenuDisplayListEnabled(true);
+		openMenu();
+		drawUntilSettled(flyoutMenuView.menuAnimation);
+
+		// the first selection change builds the selection transition
+		flyoutMenuView.setSelectedMenuItem(items.get(0));
+		drawUntilSettled(flyoutMenuView.selectionAnimation);
+
+		// changing the selection re-records the display list without the newly selected item, in the first frame
+		flyoutMenuView.setSelectedMenuItem(items.get(ITEM_COUNT - 1));
+		drawFrame();
+		assertAllocationFree(new Runnable() {
+			@Override
+			public void run() {
+				drawUntilSettled(flyoutMenuView.selectionAnimation);
+			}
+		});
+	}
+
+	@Test
+	public void scrollingDoesNotAllocate() {
+		flyoutMenuView.setItemCacheEnabled(true);
+		flyoutMenuView.setMaxMenuHeight(100);
+		openMenu();
+		drawUntilSettled(flyoutMenuView.menuAnimation);
+
+		final FlyoutMenuView.MenuOverlayView menuOverlayView = flyoutMenuView.menuOverlayView;
+		assertTrue(menuOverlayView.menuScrollable);
+
+		// first pass builds the spatial index and renders the visible items into the atlas
+		drawScroll(menuOverlayView);
+		assertAllocationFree(new Runnable() {
+			@Override
+			public void run() {
+				drawScroll(menuOverlayView);
+			}
+		});
+	}
+
+	@Test
+	public void hitTestingDoesNotAllocate() {
+		openMenu();
+		drawUntilSettled(flyoutMenuView.menuAnimation);
+
+		final FlyoutMenuView.MenuOverlayView menuOverlayView = flyoutMenuView.menuOverlayView;
+		assertAllocationFree(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < MAX_FRAMES; i++) {
+					menuOverlayView.findMenuItemAtLocalPosition(i * 5, i * 5);
+					frames++;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Open and close the menu once, which lays out items, computes the menu fill and builds its shadow and
+	 * caches, then measure a second opening
+	 */
+	private void assertOpenAnimationAllocationFree() {
+		openMenu();
+		drawUntilSettled(flyoutMenuView.menuAnimation);
+		closeMenu();
+		drawUntilSettled(flyoutMenuView.menuAnimation);
+		assertFalse(flyoutMenuView.menuOverlayViewAttached);
+
+		// attaching the overlay creates its MenuRevealView, which is sized on the first frame the menu moves
+		openMenu();
+		drawFrame();
+		drawFrame();
+		assertAllocationFree(new Runnable() {
+			@Override
+			public void run() {
+				drawUntilSettled(flyoutMenuView.menuAnimation);
+			}
+		});
+	}
+
+	private void openMenu() {
+		flyoutMenuView.animateMenuOpenChange(true, false);
+	}
+
+	private void closeMenu() {
+		flyoutMenuView.animateMenuOpenChange(false, false);
+	}
+
+	private void drawUntilSettled(Transition transition) {
+		for (int i = 0; transition.isRunning() && i < MAX_FRAMES; i++) {
+			drawFrame();
+		}
+		assertFalse(transition.isRunning());
+	}
+
+	private void drawScroll(FlyoutMenuView.MenuOverlayView menuOverlayView) {
+		for (int i = 0; i < MAX_FRAMES; i++) {
+			menuOverlayView.menuScrollY = (i * 5) % (menuOverlayView.getMaxMenuScrollY() + 1);
+			drawFrame();
+		}
+	}
+
+	/**
+	 * Advance every running transition to the next frame, then draw the button and, while the menu is open,
+	 * the overlay and reveal view
+	 */
+	private void drawFrame() {
+		frameTimeNanos += FRAME_NANOS;
+		FrameTicker.tick(frameTimeNanos);
+
+		flyoutMenuView.onDraw(canvas);
+
+		FlyoutMenuView.MenuOverlayView menuOverlayView = flyoutMenuView.menuOverlayView;
+		if (menuOverlayView != null && flyoutMenuView.menuOverlayViewAttached) {
+			menuOverlayView.onDraw(canvas);
+			if (menuOverlayView.menuRevealView != null) {
+				menuOverlayView.menuRevealView.onDraw(canvas);
+			}
+		}
+
+		frames++;
+	}
+
+	private void assertAllocationFree(Runnable work) {
+		long threadId = Thread.currentThread().getId();
+
+		// account for any allocation made by the measurement itself
+		long start = threadMXBean.getThreadAllocatedBytes(threadId);
+		long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+
+		frames = 0;
+		start = threadMXBean.getThreadAllocatedBytes(threadId);
+		work.run();
+		long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - start - overhead;
+
+		assertTrue(frames > 0);
+		assertTrue("Expected no allocations, but " + frames + " frames allocated " + allocated + " bytes",
+				allocated < frames * MAX_BYTES_PER_FRAME);
+	}
+
+	private static class TestMenuItem extends FlyoutMenuView.MenuItem {
+
+		Paint paint = new Paint();
+
+		TestMenuItem(int id) {
+			super(id);
+		}
+
+		@Override
+		public void onDraw(Canvas canvas, RectF bounds, float degreeSelected) {
+			canvas.drawRect(bounds, paint);
+		}
+	}
+
+	private static class InertCanvas extends Canvas {
+		@Override
+		public int save() {
+			return 1;
+		}
+
+		@Override
+		public void restore() {
+		}
+
+		@Override
+		public void translate(float dx, float dy) {
+		}
+
+		@Override
+		public void scale(float sx, float sy) {
+		}
+
+		@Override
+		public boolean clipPath(Path path) {
+			return true;
+		}
+
+		@Override
+		public boolean getClipBounds(Rect bounds) {
+			bounds.set(0, 0, 1080, 1920);
+			return true;
+		}
+
+		@Override
+		public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+		}
+
+		@Override
+		public void drawRect(RectF rect, Paint paint) {
+		}
+
+		@Override
+		public void drawOval(RectF oval, Paint paint) {
+		}
+
+		@Override
+		public void drawCircle(float cx, float cy, float radius, Paint paint) {
+		}
+
+		@Override
+		public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+		}
+
+		@Override
+		public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+		}
+
+		@Override
+		public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+		}
+
+		@Override
+		public void drawPicture(Picture picture) {
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package org.zakariya.flyoutmenu;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that a plain GridLayout is laid out and hit tested by its grid geometry, which must agree with
+ * getLayoutRectForItem, and that subclasses are only laid out in bulk or hit tested directly if they say how.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class GridLayoutTest {
+
+	private static final int ITEM_COUNT = 10;
+	private static final int ITEM_WIDTH = 40;
+	private static final int ITEM_HEIGHT = 30;
+	private static final int ITEM_MARGIN = 10;
+
+	@Test
+	public void getItemPositionAtFindsEveryItemInColumns() {
+		assertEveryItemIsFound(new FlyoutMenuView.GridLayout(4, FlyoutMenuView.GridLayout.UNSPECIFIED));
+	}
+
+	@Test
+	public void getItemPositionAtFindsEveryItemInRows() {
+		assertEveryItemIsFound(new FlyoutMenuView.GridLayout(FlyoutMenuView.GridLayout.UNSPECIFIED, 3));
+	}
+
+	@Test
+	public void getItemPositionAtMissesMarginsAndEmptyCells() {
+		FlyoutMenuView.InvertibleLayout layout = FlyoutMenuView.asInvertibleLayout(new FlyoutMenuView.GridLayout(4, FlyoutMenuView.GridLayout.UNSPECIFIED));
+
+		// the margin before the first column and row, and between the first two columns
+		assertEquals(-1, getItemPositionAt(layout, ITEM_MARGIN / 2, ITEM_MARGIN + 1));
+		assertEquals(-1, getItemPositionAt(layout, ITEM_MARGIN + 1, ITEM_MARGIN / 2));
+		assertEquals(-1, getItemPositionAt(layout, ITEM_MARGIN + ITEM_WIDTH + ITEM_MARGIN / 2, ITEM_MARGIN + 1));
+
+		// the last row holds items 8 and 9, so its third cell is empty, and there's no fifth column
+		int lastRowY = 2 * (ITEM_HEIGHT + ITEM_MARGIN) + ITEM_MARGIN + 1;
+		assertEquals(9, getItemPositionAt(layout, (ITEM_WIDTH + ITEM_MARGIN) + ITEM_MARGIN + 1, lastRowY));
+		assertEquals(-1, getItemPositionAt(layout, 2 * (ITEM_WIDTH + ITEM_MARGIN) + ITEM_MARGIN + 1, lastRowY));
+		assertEquals(-1, getItemPositionAt(layout, 4 * (ITEM_WIDTH + ITEM_MARGIN) + ITEM_MARGIN + 1, ITEM_MARGIN + 1));
+	}
+
+	@Test
+	public void subclassesAreHitTestedByTheirOwnRects() {
+		assertTrue(FlyoutMenuView.asInvertibleLayout(new FlyoutMenuView.GridLayout(4, FlyoutMenuView.GridLayout.UNSPECIFIED)) != null);
+
+		// a subclass may place items anywhere, so it falls back to the spatial index built from its rects
+		FlyoutMenuView.GridLayout shiftedLayout = new FlyoutMenuView.GridLayout(4, FlyoutMenuView.GridLayout.UNSPECIFIED) {
+			@Override
+			public Rect getLayoutRectForItem(int positionInList, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+				Rect rect = super.getLayoutRectForItem(positionInList, itemWidthPx, itemHeightPx, itemMarginPx);
+				rect.offset(itemWidthPx, 0);
+				return rect;
+			}
+		};
+		assertNull(FlyoutMenuView.asInvertibleLayout(shiftedLayout));
+
+		// unless it implements InvertibleLayout itself
+		InvertibleGridLayout invertibleLayout = new InvertibleGridLayout();
+		assertSame(invertibleLayout, FlyoutMenuView.asInvertibleLayout(invertibleLayout));
+		assertEquals(7, getItemPositionAt(FlyoutMenuView.asInvertibleLayout(invertibleLayout), 0, 0));
+	}
+
+	@Test
+	public void layoutItemsMatchesGetLayoutRectForItem() {
+		FlyoutMenuView.GridLayout gridLayout = new FlyoutMenuView.GridLayout(FlyoutMenuView.GridLayout.UNSPECIFIED, 3);
+		float[] frames = new float[ITEM_COUNT * 4];
+		FlyoutMenuView.asBulkLayout(gridLayout).layoutItems(ITEM_COUNT, 0, ITEM_COUNT, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN, frames);
+		assertFramesMatchRects(gridLayout, frames, 0);
+
+		// a partial layout only writes the requested range
+		frames = new float[ITEM_COUNT * 4];
+		FlyoutMenuView.asBulkLayout(gridLayout).layoutItems(ITEM_COUNT, 4, ITEM_COUNT, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN, frames);
+		for (int i = 0; i < 4 * 4; i++) {
+			assertEquals(0f, frames[i], 0);
+		}
+		assertFramesMatchRects(gridLayout, frames, 4);
+	}
+
+	@Test
+	public void subclassesAreLaidOutByTheirOwnRects() {
+		assertNull(FlyoutMenuView.asBulkLayout(new FlyoutMenuView.GridLayout(4, FlyoutMenuView.GridLayout.UNSPECIFIED) {
+		}));
+
+		BulkGridLayout bulkLayout = new BulkGridLayout();
+		assertSame(bulkLayout, FlyoutMenuView.asBulkLayout(bulkLayout));
+	}
+
+	private void assertFramesMatchRects(FlyoutMenuView.GridLayout gridLayout, float[] frames, int positionStart) {
+		for (int position = positionStart; position < ITEM_COUNT; position++) {
+			Rect rect = gridLayout.getLayoutRectForItem(position, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN);
+			int f = position * 4;
+			assertEquals(rect.left, frames[f], 0);
+			assertEquals(rect.top, frames[f + 1], 0);
+			assertEquals(rect.right, frames[f + 2], 0);
+			assertEquals(rect.bottom, frames[f + 3], 0);
+		}
+	}
+
+	private void assertEveryItemIsFound(FlyoutMenuView.GridLayout gridLayout) {
+		FlyoutMenuView.InvertibleLayout layout = FlyoutMenuView.asInvertibleLayout(gridLayout);
+		for (int position = 0; position < ITEM_COUNT; position++) {
+			Rect rect = gridLayout.getLayoutRectForItem(position, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN);
+			assertEquals(position, getItemPositionAt(layout, rect.left, rect.top));
+			assertEquals(position, getItemPositionAt(layout, rect.exactCenterX(), rect.exactCenterY()));
+			assertEquals(position, getItemPositionAt(layout, rect.right, rect.bottom));
+		}
+	}
+
+	private static int getItemPositionAt(FlyoutMenuView.InvertibleLayout layout, float x, float y) {
+		return layout.getItemPositionAt(x, y, ITEM_COUNT, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN);
+	}
+
+	private static class InvertibleGridLayout extends FlyoutMenuView.GridLayout implements FlyoutMenuView.InvertibleLayout {
+
+		InvertibleGridLayout() {
+			super(4, UNSPECIFIED);
+		}
+
+		@Override
+		public int getItemPositionAt(float x, float y, int itemCount, int itemWidthPx, int itemHeightPx, int itemMarginPx) {
+			return 7;
+		}
+	}
+
+	private static class BulkGridLayout extends FlyoutMenuView.GridLayout implements FlyoutMenuView.BulkLayout {
+
+		BulkGridLayout() {
+			super(4, UNSPECIFIED);
+		}
+
+		@Override
+		public void layoutItems(int itemCount, int positionStart, int positionEnd, int itemWidthPx, int itemHeightPx, int itemMarginPx, float[] outFrames) {
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.zakariya.flyoutmenu;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that MenuItemIdIndex finds every indexed id through hash collisions, across rebuilds which grow
+ * and shrink the adapter, and reports ids it doesn't hold as missing
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MenuItemIdIndexTest {
+
+	private MenuItemIdIndex index;
+
+	@Before
+	public void setUp() {
+		index = new MenuItemIdIndex();
+	}
+
+	@Test
+	public void unbuiltIndexHoldsNothing() {
+		assertEquals(-1, index.get(0));
+		assertEquals(-1, index.get(-1));
+	}
+
+	@Test
+	public void everyIdIsFoundThroughCollisions() {
+		// ids differing only in their high bits, and negative ids, land in few slots without spreading
+		int[] ids = new int[200];
+		for (int i = 0; i < 100; i++) {
+			ids[i] = i << 20;
+			ids[100 + i] = -1 - i * 4096;
+		}
+		index.rebuild(adapterWithIds(ids));
+
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(i, index.get(ids[i]));
+		}
+		assertEquals(-1, index.get(1));
+		assertEquals(-1, index.get(100 << 20));
+		assertEquals(-1, index.get(-2));
+	}
+
+	@Test
+	public void rebuildingReindexesAGrowingOrShrinkingAdapter() {
+		index.rebuild(adapterWithIds(sequentialIds(0, 4)));
+		assertEquals(3, index.get(3));
+		assertEquals(-1, index.get(4));
+
+		// growing past the table's capacity
+		index.rebuild(adapterWithIds(sequentialIds(10, 100)));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, index.get(10 + i));
+		}
+		assertEquals(-1, index.get(3));
+
+		// shrinking keeps the larger table, but none of the ids which were removed
+		index.rebuild(adapterWithIds(sequentialIds(50, 3)));
+		assertEquals(0, index.get(50));
+		assertEquals(2, index.get(52));
+		assertEquals(-1, index.get(53));
+		assertEquals(-1, index.get(10));
+	}
+
+	@Test
+	public void duplicateIdsIndexTheFirstItem() {
+		index.rebuild(adapterWithIds(new int[]{7, 3, 7, 3, 9}));
+		assertEquals(0, index.get(7));
+		assertEquals(1, index.get(3));
+		assertEquals(4, index.get(9));
+	}
+
+	@Test
+	public void emptyAdapterHoldsNothing() {
+		index.rebuild(adapterWithIds(sequentialIds(0, 10)));
+		index.rebuild(adapterWithIds(new int[0]));
+		for (int i = 0; i < 10; i++) {
+			assertEquals(-1, index.get(i));
+		}
+	}
+
+	private static int[] sequentialIds(int first, int count) {
+		int[] ids = new int[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = first + i;
+		}
+		return ids;
+	}
+
+	private static FlyoutMenuView.ArrayAdapter<FlyoutMenuView.MenuItem> adapterWithIds(int[] ids) {
+		List<FlyoutMenuView.MenuItem> items = new ArrayList<>();
+		for (int id : ids) {
+			items.add(new FlyoutMenuView.MenuItem(id));
+		}
+
+		FlyoutMenuView.ArrayAdapter<FlyoutMenuView.MenuItem> adapter = new FlyoutMenuView.ArrayAdapter<>(items);
+		adapter.setHasStableIds(true);
+		return adapter;
+	}
+}
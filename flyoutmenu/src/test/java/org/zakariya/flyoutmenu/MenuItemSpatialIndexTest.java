@@ -0,0 +1,111 @@
+package org.zakariya.flyoutmenu;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies MenuItemSpatialIndex's point lookups and rect queries against a brute force search of the frames
+ */
+public class MenuItemSpatialIndexTest {
+
+	private static final int COLUMNS = 5;
+	private static final int ROWS = 4;
+	private static final float CELL = 10;
+	private static final float GAP = 4;
+
+	private MenuItemSpatialIndex index;
+	private float[] frames;
+	private int count;
+	private int[] positions;
+
+	@Before
+	public void setUp() {
+		index = new MenuItemSpatialIndex();
+
+		// a grid of cells with gaps between them, then one wide item spanning the whole top of the grid
+		count = COLUMNS * ROWS + 1;
+		frames = new float[count * 4];
+		for (int i = 0; i < COLUMNS * ROWS; i++) {
+			float left = (i % COLUMNS) * (CELL + GAP);
+			float top = (i / COLUMNS) * (CELL + GAP);
+			setFrame(i, left, top, left + CELL, top + CELL);
+		}
+		setFrame(COLUMNS * ROWS, 0, 0, COLUMNS * (CELL + GAP) - GAP, CELL / 2);
+
+		positions = new int[count];
+		index.build(frames, count);
+	}
+
+	@Test
+	public void getFindsTheItemUnderAPoint() {
+		for (int i = COLUMNS; i < COLUMNS * ROWS; i++) {
+			int f = i * 4;
+			assertEquals(i, index.get(frames, (frames[f] + frames[f + 2]) / 2, (frames[f + 1] + frames[f + 3]) / 2));
+		}
+
+		// the gaps between items, and points outside the items' extent
+		assertEquals(-1, index.get(frames, CELL + GAP / 2, CELL + GAP + 1));
+		assertEquals(-1, index.get(frames, CELL + 1, CELL + GAP / 2));
+		assertEquals(-1, index.get(frames, -1, 1));
+		assertEquals(-1, index.get(frames, 1, ROWS * (CELL + GAP)));
+	}
+
+	@Test
+	public void getFindsTheFirstOfOverlappingItems() {
+		// the wide item overlaps the top row, whose items come first in adapter order
+		assertEquals(0, index.get(frames, 1, 1));
+		assertEquals(COLUMNS * ROWS, index.get(frames, CELL + GAP / 2, 1));
+	}
+
+	@Test
+	public void queryReportsEachIntersectingItemOnce() {
+		assertQueryMatchesBruteForce(0, 0, COLUMNS * (CELL + GAP), ROWS * (CELL + GAP));
+		assertQueryMatchesBruteForce(CELL / 2, CELL / 2, 2 * (CELL + GAP) + 1, 2 * (CELL + GAP) + 1);
+		assertQueryMatchesBruteForce(-100, -100, 1000, 1000);
+	}
+
+	@Test
+	public void queriesOutsideTheItemsFindNothing() {
+		assertEquals(0, index.query(frames, CELL + 1, CELL + 1, CELL + GAP - 1, CELL + GAP - 1, positions));
+		assertEquals(0, index.query(frames, -20, -20, -10, -10, positions));
+		assertEquals(0, index.query(frames, 0, 1000, 100, 1100, positions));
+	}
+
+	@Test
+	public void emptyIndexFindsNothing() {
+		index.build(frames, 0);
+		assertEquals(-1, index.get(frames, 1, 1));
+		assertEquals(0, index.query(frames, 0, 0, 100, 100, positions));
+	}
+
+	private void assertQueryMatchesBruteForce(float l, float t, float r, float b) {
+		int found = index.query(frames, l, t, r, b, positions);
+		int[] actual = Arrays.copyOf(positions, found);
+		Arrays.sort(actual);
+
+		int expectedCount = 0;
+		int[] expected = new int[count];
+		for (int i = 0; i < count; i++) {
+			int f = i * 4;
+			if (frames[f + 2] >= l && frames[f] <= r && frames[f + 3] >= t && frames[f + 1] <= b) {
+				expected[expectedCount++] = i;
+			}
+		}
+
+		assertTrue(expectedCount > 0);
+		assertTrue(Arrays.equals(Arrays.copyOf(expected, expectedCount), actual));
+	}
+
+	private void setFrame(int position, float left, float top, float right, float bottom) {
+		int f = position * 4;
+		frames[f] = left;
+		frames[f + 1] = top;
+		frames[f + 2] = right;
+		frames[f + 3] = bottom;
+	}
+}
@@ -0,0 +1,146 @@
+package org.zakariya.flyoutmenu;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Verifies that MenuOverlayView patches its items and their frames as the adapter inserts and removes
+ * items, so they match those of a menu laid out from scratch with the adapter's new contents
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MenuOverlayViewItemRangeTest {
+
+	private static final int ITEM_COUNT = 10;
+
+	private Context context;
+	private List<FlyoutMenuView.MenuItem> items;
+	private FlyoutMenuView.ArrayAdapter<FlyoutMenuView.MenuItem> adapter;
+	private FlyoutMenuView flyoutMenuView;
+	private FlyoutMenuView.MenuOverlayView menuOverlayView;
+	private int nextId;
+
+	@Before
+	public void setUp() {
+		context = RuntimeEnvironment.application;
+
+		items = new ArrayList<>();
+		for (int i = 0; i < ITEM_COUNT; i++) {
+			items.add(new FlyoutMenuView.MenuItem(nextId++));
+		}
+		adapter = new FlyoutMenuView.ArrayAdapter<>(items);
+
+		flyoutMenuView = createFlyoutMenuView();
+		adapter.registerObserver(flyoutMenuView.adapterObserver);
+
+		menuOverlayView = flyoutMenuView.menuOverlayView;
+		menuOverlayView.layoutMenuItems();
+		fetchAllItems(menuOverlayView);
+	}
+
+	@Test
+	public void insertionsShiftTheItemsAfterThem() {
+		insert(4, 3);
+		assertMatchesFreshLayout();
+
+		insert(0, 1);
+		assertMatchesFreshLayout();
+
+		insert(items.size(), 2);
+		assertMatchesFreshLayout();
+	}
+
+	@Test
+	public void insertionsGrowThePreallocatedArrays() {
+		int capacity = menuOverlayView.items.length;
+		insert(3, capacity);
+		assertEquals(ITEM_COUNT + capacity, menuOverlayView.itemCount);
+		assertMatchesFreshLayout();
+	}
+
+	@Test
+	public void removalsShiftTheItemsAfterThem() {
+		remove(2, 3);
+		assertMatchesFreshLayout();
+
+		remove(0, 1);
+		assertMatchesFreshLayout();
+
+		remove(items.size() - 2, 2);
+		assertMatchesFreshLayout();
+
+		// items past the end are released
+		for (int i = menuOverlayView.itemCount; i < menuOverlayView.items.length; i++) {
+			assertNull(menuOverlayView.items[i]);
+		}
+	}
+
+	@Test
+	public void removingEveryItemEmptiesTheMenu() {
+		remove(0, items.size());
+		assertEquals(0, menuOverlayView.itemCount);
+
+		insert(0, 2);
+		assertMatchesFreshLayout();
+	}
+
+	private void insert(int positionStart, int count) {
+		for (int i = 0; i < count; i++) {
+			items.add(positionStart + i, new FlyoutMenuView.MenuItem(nextId++));
+		}
+		adapter.notifyItemRangeInserted(positionStart, count);
+		fetchAllItems(menuOverlayView);
+	}
+
+	private void remove(int positionStart, int count) {
+		for (int i = 0; i < count; i++) {
+			items.remove(positionStart);
+		}
+		adapter.notifyItemRangeRemoved(positionStart, count);
+		fetchAllItems(menuOverlayView);
+	}
+
+	private void assertMatchesFreshLayout() {
+		FlyoutMenuView.MenuOverlayView freshMenuOverlayView = createFlyoutMenuView().menuOverlayView;
+		freshMenuOverlayView.layoutMenuItems();
+
+		assertEquals(items.size(), menuOverlayView.itemCount);
+		assertEquals(freshMenuOverlayView.itemCount, menuOverlayView.itemCount);
+		for (int i = 0; i < items.size(); i++) {
+			assertSame(items.get(i), menuOverlayView.items[i]);
+		}
+		for (int i = 0; i < items.size() * 4; i++) {
+			assertEquals(freshMenuOverlayView.itemFrames[i], menuOverlayView.itemFrames[i], 0);
+		}
+	}
+
+	private FlyoutMenuView createFlyoutMenuView() {
+		FlyoutMenuView flyoutMenuView = new FlyoutMenuView(context);
+		flyoutMenuView.setLayout(new FlyoutMenuView.GridLayout(4, FlyoutMenuView.GridLayout.UNSPECIFIED));
+		flyoutMenuView.setAdapter(adapter);
+		flyoutMenuView.menuOverlayView = new FlyoutMenuView.MenuOverlayView(context, flyoutMenuView);
+		return flyoutMenuView;
+	}
+
+	/**
+	 * Items are fetched from the adapter as they're drawn, so fetch them all as a full draw would
+	 */
+	private static void fetchAllItems(FlyoutMenuView.MenuOverlayView menuOverlayView) {
+		for (int i = 0; i < menuOverlayView.itemCount; i++) {
+			menuOverlayView.getMenuItem(i);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.zakariya.flyoutmenu;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies RadialLayout's assignment of items to rings, and that hit testing by direction and distance
+ * from the menu's center finds the item laid out there
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RadialLayoutTest {
+
+	// two full rings of 6 and 12 items, and 2 items in the third ring
+	private static final int ITEM_COUNT = 20;
+	private static final int ITEM_WIDTH = 30;
+	private static final int ITEM_HEIGHT = 40;
+	private static final int ITEM_MARGIN = 10;
+
+	private FlyoutMenuView.RadialLayout layout;
+	private float[] frames;
+	private float center;
+	private float pitch;
+
+	@Before
+	public void setUp() {
+		layout = new FlyoutMenuView.RadialLayout();
+		frames = new float[ITEM_COUNT * 4];
+		layout.layoutItems(ITEM_COUNT, 0, ITEM_COUNT, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN, frames);
+		center = layout.getMinimumSizeForItems(ITEM_COUNT, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN).width / 2f;
+		pitch = (float) Math.sqrt(ITEM_WIDTH * ITEM_WIDTH + ITEM_HEIGHT * ITEM_HEIGHT) + ITEM_MARGIN;
+	}
+
+	@Test
+	public void ringsHoldSixMoreItemsThanTheLast() {
+		for (int position = 0; position < ITEM_COUNT; position++) {
+			int ring = position < 6 ? 0 : position < 18 ? 1 : 2;
+			int f = position * 4;
+			float dx = (frames[f] + frames[f + 2]) / 2 - center;
+			float dy = (frames[f + 1] + frames[f + 3]) / 2 - center;
+			assertEquals((ring + 1) * pitch, (float) Math.sqrt(dx * dx + dy * dy), 1);
+		}
+
+		// the first item of each ring is at 12 o'clock
+		assertEquals(center, (frames[0] + frames[2]) / 2, 1);
+		assertEquals(center, (frames[6 * 4] + frames[6 * 4 + 2]) / 2, 1);
+		assertEquals(center, (frames[18 * 4] + frames[18 * 4 + 2]) / 2, 1);
+	}
+
+	@Test
+	public void everyItemIsFoundAtItsCenter() {
+		for (int position = 0; position < ITEM_COUNT; position++) {
+			int f = position * 4;
+			assertEquals(position, getItemPositionAt((frames[f] + frames[f + 2]) / 2, (frames[f + 1] + frames[f + 3]) / 2));
+		}
+	}
+
+	@Test
+	public void hubSelectsNothing() {
+		assertEquals(-1, getItemPositionAt(center, center));
+		assertEquals(-1, getItemPositionAtAngle(0, pitch * 0.4f));
+	}
+
+	@Test
+	public void touchesBetweenRingsSelectTheNearestRing() {
+		// item 0 is straight up in the first ring, item 6 straight up in the second
+		assertEquals(0, getItemPositionAtAngle(0, pitch * 1.4f));
+		assertEquals(6, getItemPositionAtAngle(0, pitch * 1.6f));
+
+		// item 1 is 60 degrees clockwise of item 0, so a touch just short of halfway is still item 0's
+		assertEquals(0, getItemPositionAtAngle(29, pitch));
+		assertEquals(1, getItemPositionAtAngle(31, pitch));
+	}
+
+	@Test
+	public void touchesPastTheOuterRingSelectByDirection() {
+		// item 18 is straight up in the partly filled outer ring, item 19 20 degrees clockwise of it
+		assertEquals(18, getItemPositionAtAngle(0, pitch * 10));
+		assertEquals(19, getItemPositionAtAngle(20, pitch * 10));
+
+		// straight down the outer ring is empty, so the ring inside it owns the direction
+		assertEquals(12, getItemPositionAtAngle(180, pitch * 3));
+		assertEquals(12, getItemPositionAtAngle(180, pitch * 10));
+	}
+
+	@Test
+	public void emptySlicesOfASingleRingSelectNothing() {
+		// with 3 items, only the first ring's right half is filled, clockwise from 12 o'clock
+		float c = layout.getMinimumSizeForItems(3, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN).width / 2f;
+		assertEquals(0, layout.getItemPositionAt(c, c - pitch * 5, 3, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN));
+		assertEquals(-1, layout.getItemPositionAt(c, c + pitch * 5, 3, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN));
+		assertEquals(-1, layout.getItemPositionAt(c - pitch * 5, c, 3, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN));
+	}
+
+	/**
+	 * @param degrees clockwise from 12 o'clock
+	 * @param radius  distance from the menu's center
+	 */
+	private int getItemPositionAtAngle(float degrees, float radius) {
+		double angle = Math.toRadians(degrees - 90);
+		return getItemPositionAt(center + (float) (radius * Math.cos(angle)), center + (float) (radius * Math.sin(angle)));
+	}
+
+	private int getItemPositionAt(float x, float y) {
+		return layout.getItemPositionAt(x, y, ITEM_COUNT, ITEM_WIDTH, ITEM_HEIGHT, ITEM_MARGIN);
+	}
+}
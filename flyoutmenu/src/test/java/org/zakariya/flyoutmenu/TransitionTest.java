@@ -0,0 +1,176 @@
+package org.zakariya.flyoutmenu;
+
+import android.animation.TimeInterpolator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies Transition's spring. Frames are passed to Transition.advance directly, 16ms apart, rather than
+ * waiting on the FrameTicker's Choreographer callback, which is held back by pausing the main looper.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TransitionTest {
+
+	private static final long FRAME_NANOS = 16000000L;
+	private static final int MAX_FRAMES = 500;
+
+	private static final TimeInterpolator LINEAR = new TimeInterpolator() {
+		@Override
+		public float getInterpolation(float input) {
+			return input;
+		}
+	};
+
+	private Transition transition;
+	private long frameTimeNanos;
+
+	@Before
+	public void setUp() {
+		ShadowLooper.pauseMainLooper();
+		transition = new Transition(LINEAR, null);
+		transition.setSpring(225, 0.85f);
+		frameTimeNanos = 0;
+	}
+
+	@After
+	public void tearDown() {
+		transition.cancel();
+	}
+
+	@Test
+	public void underdampedSpringOvershootsAndSettles() {
+		transition.setValue(0);
+		transition.springTo(1, 0);
+
+		float maxValue = 0;
+		int frames = 0;
+		while (transition.isRunning() && frames++ < MAX_FRAMES) {
+			advance();
+			maxValue = Math.max(maxValue, transition.getValue());
+		}
+
+		assertFalse(transition.isRunning());
+		assertEquals(1f, transition.getValue(), 0);
+		assertEquals(0f, transition.getVelocity(), 0);
+		assertTrue(maxValue > 1);
+	}
+
+	@Test
+	public void clampedSpringEndsOnReachingEndValue() {
+		int unclampedFrames = countFramesToRest(false);
+		int clampedFrames = countFramesToRest(true);
+
+		assertEquals(0f, transition.getValue(), 0);
+		assertTrue(clampedFrames < unclampedFrames);
+	}
+
+	@Test
+	public void clampedSpringNeverPassesEndValue() {
+		transition.setOvershootClamped(true);
+		transition.setValue(1);
+		transition.springTo(0, 0);
+
+		int frames = 0;
+		while (transition.isRunning() && frames++ < MAX_FRAMES) {
+			advance();
+			assertTrue(transition.getValue() >= 0);
+		}
+
+		assertFalse(transition.isRunning());
+		assertEquals(0f, transition.getValue(), 0);
+	}
+
+	@Test
+	public void reversalKeepsVelocity() {
+		transition.setValue(0);
+		transition.springTo(1, 0);
+		for (int i = 0; i < 5; i++) {
+			advance();
+		}
+
+		float value = transition.getValue();
+		float velocity = transition.getVelocity();
+		assertTrue(velocity > 0);
+
+		// retargeting keeps the spring's momentum, so it carries on opening briefly before heading back
+		transition.springTo(0, 0);
+		assertEquals(velocity, transition.getVelocity(), 0);
+		advance();
+		assertTrue(transition.getValue() > value);
+		assertTrue(transition.getVelocity() < velocity);
+
+		int frames = 0;
+		while (transition.isRunning() && frames++ < MAX_FRAMES) {
+			advance();
+		}
+		assertEquals(0f, transition.getValue(), 0);
+	}
+
+	@Test
+	public void delayedRetargetHeadsForPreviousEndValueFirst() {
+		transition.setValue(1);
+		transition.springTo(0, 100);
+
+		// the delay is measured from the first frame, which only starts the clock
+		advance();
+		for (int i = 0; i < 6; i++) {
+			advance();
+			assertEquals(1f, transition.getValue(), 0);
+			assertTrue(transition.isRunning());
+		}
+
+		advance();
+		assertTrue(transition.getValue() < 1);
+	}
+
+	@Test
+	public void suppliedVelocityIsCarriedIntoSpring() {
+		transition.setValue(0.5f);
+		transition.springTo(1, 0);
+		advance();
+		advance();
+		float valueAtRest = transition.getValue();
+
+		// a velocity away from the end value, as a closing fling hands to an opening spring
+		transition.setValue(0.5f);
+		transition.setVelocity(-4);
+		transition.springTo(1, 0);
+		advance();
+		advance();
+		assertTrue(transition.getValue() < valueAtRest);
+	}
+
+	/**
+	 * Spring from 1 to 0, and count the frames until the spring comes to rest
+	 */
+	private int countFramesToRest(boolean overshootClamped) {
+		transition.setOvershootClamped(overshootClamped);
+		transition.setValue(1);
+		transition.springTo(0, 0);
+
+		int frames = 0;
+		while (transition.isRunning() && frames < MAX_FRAMES) {
+			advance();
+			frames++;
+		}
+
+		assertFalse(transition.isRunning());
+		return frames;
+	}
+
+	private void advance() {
+		frameTimeNanos += FRAME_NANOS;
+		transition.advance(frameTimeNanos);
+	}
+}